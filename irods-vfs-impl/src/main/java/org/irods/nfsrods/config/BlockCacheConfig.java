@@ -0,0 +1,49 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BlockCacheConfig
+{
+    private boolean enabled_;
+    private long capacity_;
+    private int blockSize_;
+
+    // @formatter:off
+    @JsonCreator
+    BlockCacheConfig(@JsonProperty("enabled")             Boolean _enabled,
+                     @JsonProperty("capacity_in_bytes")   Long _capacity,
+                     @JsonProperty("block_size_in_bytes") Integer _blockSize)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, true);
+        capacity_ = ConfigUtils.valueOrDefault(_capacity, 256L * 1024 * 1024);
+        blockSize_ = ConfigUtils.valueOrDefault(_blockSize, 1024 * 1024);
+
+        if (blockSize_ <= 0 || capacity_ < blockSize_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: block_cache capacity/block size");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public long getCapacity()
+    {
+        return capacity_;
+    }
+
+    @JsonIgnore
+    public int getBlockSize()
+    {
+        return blockSize_;
+    }
+}
@@ -0,0 +1,31 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BufferPoolConfig
+{
+    private long capacity_;
+
+    // @formatter:off
+    @JsonCreator
+    BufferPoolConfig(@JsonProperty("capacity_in_bytes") Long _capacity)
+    {
+        capacity_ = ConfigUtils.valueOrDefault(_capacity, 256L * 1024 * 1024);
+
+        if (capacity_ < 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: buffer_pool capacity");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public long getCapacity()
+    {
+        return capacity_;
+    }
+}
@@ -9,4 +9,9 @@ class ConfigUtils
             throw new IllegalArgumentException("Missing server configuration option: " + _message);
         }
     }
+
+    static <T> T valueOrDefault(T _value, T _defaultValue)
+    {
+        return (null != _value) ? _value : _defaultValue;
+    }
 }
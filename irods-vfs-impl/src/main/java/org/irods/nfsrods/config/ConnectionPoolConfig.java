@@ -0,0 +1,87 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ConnectionPoolConfig
+{
+    private int maxConnectionsPerUser_;
+    private int maxConnections_;
+    private int minIdleConnectionsPerUser_;
+    private int idleTimeoutInMillis_;
+    private int validationIntervalInMillis_;
+    private int maxWaitTimeInMillis_;
+
+    // @formatter:off
+    @JsonCreator
+    ConnectionPoolConfig(@JsonProperty("max_connections_per_user")            Integer _maxConnectionsPerUser,
+                         @JsonProperty("max_connections")                     Integer _maxConnections,
+                         @JsonProperty("min_idle_connections_per_user")       Integer _minIdleConnectionsPerUser,
+                         @JsonProperty("idle_timeout_in_milliseconds")        Integer _idleTimeoutInMillis,
+                         @JsonProperty("validation_interval_in_milliseconds") Integer _validationIntervalInMillis,
+                         @JsonProperty("max_wait_time_in_milliseconds")       Integer _maxWaitTimeInMillis)
+    {
+        maxConnectionsPerUser_ = ConfigUtils.valueOrDefault(_maxConnectionsPerUser, 8);
+        maxConnections_ = ConfigUtils.valueOrDefault(_maxConnections, 64);
+        minIdleConnectionsPerUser_ = ConfigUtils.valueOrDefault(_minIdleConnectionsPerUser, 1);
+        idleTimeoutInMillis_ = ConfigUtils.valueOrDefault(_idleTimeoutInMillis, 60000);
+        validationIntervalInMillis_ = ConfigUtils.valueOrDefault(_validationIntervalInMillis, 10000);
+        maxWaitTimeInMillis_ = ConfigUtils.valueOrDefault(_maxWaitTimeInMillis, 30000);
+
+        if (maxConnectionsPerUser_ < 1 || maxConnections_ < maxConnectionsPerUser_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: connection_pool max_connections");
+        }
+
+        if (minIdleConnectionsPerUser_ < 0 || minIdleConnectionsPerUser_ > maxConnectionsPerUser_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: " +
+                                               "connection_pool min_idle_connections_per_user");
+        }
+
+        if (idleTimeoutInMillis_ <= 0 || validationIntervalInMillis_ < 0 || maxWaitTimeInMillis_ < 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: connection_pool timeouts");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public int getMaxConnectionsPerUser()
+    {
+        return maxConnectionsPerUser_;
+    }
+
+    @JsonIgnore
+    public int getMaxConnections()
+    {
+        return maxConnections_;
+    }
+
+    @JsonIgnore
+    public int getMinIdleConnectionsPerUser()
+    {
+        return minIdleConnectionsPerUser_;
+    }
+
+    @JsonIgnore
+    public int getIdleTimeoutInMilliseconds()
+    {
+        return idleTimeoutInMillis_;
+    }
+
+    @JsonIgnore
+    public int getValidationIntervalInMilliseconds()
+    {
+        return validationIntervalInMillis_;
+    }
+
+    @JsonIgnore
+    public int getMaxWaitTimeInMilliseconds()
+    {
+        return maxWaitTimeInMillis_;
+    }
+}
@@ -0,0 +1,63 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DiskCacheConfig
+{
+    private boolean enabled_;
+    private String directory_;
+    private long capacity_;
+    private int segmentSize_;
+
+    // @formatter:off
+    @JsonCreator
+    DiskCacheConfig(@JsonProperty("enabled")               Boolean _enabled,
+                    @JsonProperty("directory")             String _directory,
+                    @JsonProperty("capacity_in_bytes")     Long _capacity,
+                    @JsonProperty("segment_size_in_bytes") Integer _segmentSize)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, false);
+        directory_ = _directory;
+        capacity_ = ConfigUtils.valueOrDefault(_capacity, 10L * 1024 * 1024 * 1024);
+        segmentSize_ = ConfigUtils.valueOrDefault(_segmentSize, 256 * 1024 * 1024);
+
+        if (enabled_)
+        {
+            ConfigUtils.throwIfNull(_directory, "disk_cache.directory");
+        }
+
+        if (segmentSize_ <= 0 || capacity_ < segmentSize_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: disk_cache capacity/segment size");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public String getDirectory()
+    {
+        return directory_;
+    }
+
+    @JsonIgnore
+    public long getCapacity()
+    {
+        return capacity_;
+    }
+
+    @JsonIgnore
+    public int getSegmentSize()
+    {
+        return segmentSize_;
+    }
+}
@@ -0,0 +1,41 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class InodeMapConfig
+{
+    private int maxEntries_;
+    private String stateFile_;
+
+    // @formatter:off
+    @JsonCreator
+    InodeMapConfig(@JsonProperty("max_entries") Integer _maxEntries,
+                   @JsonProperty("state_file")  String _stateFile)
+    {
+        maxEntries_ = ConfigUtils.valueOrDefault(_maxEntries, 5000000);
+        stateFile_ = _stateFile;
+
+        if (maxEntries_ <= 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: inode_map max_entries");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public int getMaxEntries()
+    {
+        return maxEntries_;
+    }
+
+    // Returns null if the state of the inode map is not persisted.
+    @JsonIgnore
+    public String getStateFile()
+    {
+        return stateFile_;
+    }
+}
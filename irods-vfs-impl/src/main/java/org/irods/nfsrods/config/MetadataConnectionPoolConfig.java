@@ -0,0 +1,84 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MetadataConnectionPoolConfig
+{
+    private int maxConnections_;
+    private int minIdleConnections_;
+    private int idleTimeoutInMillis_;
+    private int validationIntervalInMillis_;
+    private int maxWaitTimeInMillis_;
+    private int queryTimeoutInMillis_;
+
+    // @formatter:off
+    @JsonCreator
+    MetadataConnectionPoolConfig(@JsonProperty("max_connections")                     Integer _maxConnections,
+                                 @JsonProperty("min_idle_connections")                Integer _minIdleConnections,
+                                 @JsonProperty("idle_timeout_in_milliseconds")        Integer _idleTimeoutInMillis,
+                                 @JsonProperty("validation_interval_in_milliseconds") Integer _validationIntervalInMillis,
+                                 @JsonProperty("max_wait_time_in_milliseconds")       Integer _maxWaitTimeInMillis,
+                                 @JsonProperty("query_timeout_in_milliseconds")       Integer _queryTimeoutInMillis)
+    {
+        maxConnections_ = ConfigUtils.valueOrDefault(_maxConnections, 16);
+        minIdleConnections_ = ConfigUtils.valueOrDefault(_minIdleConnections, 2);
+        idleTimeoutInMillis_ = ConfigUtils.valueOrDefault(_idleTimeoutInMillis, 60000);
+        validationIntervalInMillis_ = ConfigUtils.valueOrDefault(_validationIntervalInMillis, 10000);
+        maxWaitTimeInMillis_ = ConfigUtils.valueOrDefault(_maxWaitTimeInMillis, 30000);
+        queryTimeoutInMillis_ = ConfigUtils.valueOrDefault(_queryTimeoutInMillis, 30000);
+
+        if (maxConnections_ < 1 || minIdleConnections_ < 0 || minIdleConnections_ > maxConnections_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: " +
+                                               "metadata_connection_pool connection counts");
+        }
+
+        if (idleTimeoutInMillis_ <= 0 || validationIntervalInMillis_ < 0 || maxWaitTimeInMillis_ < 0 ||
+            queryTimeoutInMillis_ < 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: metadata_connection_pool timeouts");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public int getMaxConnections()
+    {
+        return maxConnections_;
+    }
+
+    @JsonIgnore
+    public int getMinIdleConnections()
+    {
+        return minIdleConnections_;
+    }
+
+    @JsonIgnore
+    public int getIdleTimeoutInMilliseconds()
+    {
+        return idleTimeoutInMillis_;
+    }
+
+    @JsonIgnore
+    public int getValidationIntervalInMilliseconds()
+    {
+        return validationIntervalInMillis_;
+    }
+
+    @JsonIgnore
+    public int getMaxWaitTimeInMilliseconds()
+    {
+        return maxWaitTimeInMillis_;
+    }
+
+    // Returns 0 if queries do not time out.
+    @JsonIgnore
+    public int getQueryTimeoutInMilliseconds()
+    {
+        return queryTimeoutInMillis_;
+    }
+}
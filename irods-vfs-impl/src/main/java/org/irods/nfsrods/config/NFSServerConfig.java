@@ -13,6 +13,20 @@ public class NFSServerConfig
     private int userInfoRefreshTimeInMillis_;
     private int fileInfoRefreshTimeInMillis_;
     private int userAccessRefreshTimeInMillis_;
+    private OpenFileConfig openFileConfig_;
+    private ReadAheadConfig readAheadConfig_;
+    private ParallelReadConfig parallelReadConfig_;
+    private WriteBehindConfig writeBehindConfig_;
+    private WriteSpoolConfig writeSpoolConfig_;
+    private BlockCacheConfig blockCacheConfig_;
+    private DiskCacheConfig diskCacheConfig_;
+    private BufferPoolConfig bufferPoolConfig_;
+    private ReaddirConfig readdirConfig_;
+    private InodeMapConfig inodeMapConfig_;
+    private ConnectionPoolConfig connectionPoolConfig_;
+    private MetadataConnectionPoolConfig metadataConnectionPoolConfig_;
+    private StatBatchingConfig statBatchingConfig_;
+    private RpcConfig rpcConfig_;
     
     // @formatter:off
     @JsonCreator
@@ -20,7 +34,21 @@ public class NFSServerConfig
                     @JsonProperty("irods_mount_point")                             String _iRODSMountPoint,
                     @JsonProperty("user_information_refresh_time_in_milliseconds") Integer _userInfoRefreshTimeInMillis,
                     @JsonProperty("file_information_refresh_time_in_milliseconds") Integer _fileInfoRefreshTimeInMillis,
-                    @JsonProperty("user_access_refresh_time_in_milliseconds")      Integer _userAccessRefreshTimeInMillis)
+                    @JsonProperty("user_access_refresh_time_in_milliseconds")      Integer _userAccessRefreshTimeInMillis,
+                    @JsonProperty("open_files")                                    OpenFileConfig _openFileConfig,
+                    @JsonProperty("read_ahead")                                    ReadAheadConfig _readAheadConfig,
+                    @JsonProperty("parallel_read")                                 ParallelReadConfig _parallelReadConfig,
+                    @JsonProperty("write_behind")                                  WriteBehindConfig _writeBehindConfig,
+                    @JsonProperty("write_spool")                                   WriteSpoolConfig _writeSpoolConfig,
+                    @JsonProperty("block_cache")                                   BlockCacheConfig _blockCacheConfig,
+                    @JsonProperty("disk_cache")                                    DiskCacheConfig _diskCacheConfig,
+                    @JsonProperty("buffer_pool")                                   BufferPoolConfig _bufferPoolConfig,
+                    @JsonProperty("readdir")                                       ReaddirConfig _readdirConfig,
+                    @JsonProperty("inode_map")                                     InodeMapConfig _inodeMapConfig,
+                    @JsonProperty("connection_pool")                               ConnectionPoolConfig _connectionPoolConfig,
+                    @JsonProperty("metadata_connection_pool")                      MetadataConnectionPoolConfig _metadataConnectionPoolConfig,
+                    @JsonProperty("stat_batching")                                 StatBatchingConfig _statBatchingConfig,
+                    @JsonProperty("rpc")                                           RpcConfig _rpcConfig)
     {
         ConfigUtils.throwIfNull(_port, "port");
         ConfigUtils.throwIfNull(_iRODSMountPoint, "irods_mount_point");
@@ -33,6 +61,25 @@ public class NFSServerConfig
         userInfoRefreshTimeInMillis_ = _userInfoRefreshTimeInMillis;
         fileInfoRefreshTimeInMillis_ = _fileInfoRefreshTimeInMillis;
         userAccessRefreshTimeInMillis_ = _userAccessRefreshTimeInMillis;
+        openFileConfig_ = ConfigUtils.valueOrDefault(_openFileConfig, new OpenFileConfig(null, null));
+        readAheadConfig_ = ConfigUtils.valueOrDefault(_readAheadConfig, new ReadAheadConfig(null, null, null, null));
+        parallelReadConfig_ = ConfigUtils.valueOrDefault(_parallelReadConfig,
+                                                         new ParallelReadConfig(null, null, null, null));
+        writeBehindConfig_ = ConfigUtils.valueOrDefault(_writeBehindConfig, new WriteBehindConfig(null, null, null));
+        writeSpoolConfig_ = ConfigUtils.valueOrDefault(_writeSpoolConfig,
+                                                       new WriteSpoolConfig(null, null, null, null, null));
+        blockCacheConfig_ = ConfigUtils.valueOrDefault(_blockCacheConfig, new BlockCacheConfig(null, null, null));
+        diskCacheConfig_ = ConfigUtils.valueOrDefault(_diskCacheConfig, new DiskCacheConfig(null, null, null, null));
+        bufferPoolConfig_ = ConfigUtils.valueOrDefault(_bufferPoolConfig, new BufferPoolConfig(null));
+        readdirConfig_ = ConfigUtils.valueOrDefault(_readdirConfig, new ReaddirConfig(null, null, null));
+        inodeMapConfig_ = ConfigUtils.valueOrDefault(_inodeMapConfig, new InodeMapConfig(null, null));
+        connectionPoolConfig_ = ConfigUtils.valueOrDefault(_connectionPoolConfig,
+                                                           new ConnectionPoolConfig(null, null, null, null, null, null));
+        metadataConnectionPoolConfig_ =
+            ConfigUtils.valueOrDefault(_metadataConnectionPoolConfig,
+                                       new MetadataConnectionPoolConfig(null, null, null, null, null, null));
+        statBatchingConfig_ = ConfigUtils.valueOrDefault(_statBatchingConfig, new StatBatchingConfig(null, null, null));
+        rpcConfig_ = ConfigUtils.valueOrDefault(_rpcConfig, new RpcConfig(null, null, null, null, null));
     }
     // @formatter:on
 
@@ -65,4 +112,88 @@ public class NFSServerConfig
     {
         return userAccessRefreshTimeInMillis_;
     }
+
+    @JsonIgnore
+    public OpenFileConfig getOpenFileConfig()
+    {
+        return openFileConfig_;
+    }
+
+    @JsonIgnore
+    public ReadAheadConfig getReadAheadConfig()
+    {
+        return readAheadConfig_;
+    }
+
+    @JsonIgnore
+    public ParallelReadConfig getParallelReadConfig()
+    {
+        return parallelReadConfig_;
+    }
+
+    @JsonIgnore
+    public WriteBehindConfig getWriteBehindConfig()
+    {
+        return writeBehindConfig_;
+    }
+
+    @JsonIgnore
+    public WriteSpoolConfig getWriteSpoolConfig()
+    {
+        return writeSpoolConfig_;
+    }
+
+    @JsonIgnore
+    public BlockCacheConfig getBlockCacheConfig()
+    {
+        return blockCacheConfig_;
+    }
+
+    @JsonIgnore
+    public DiskCacheConfig getDiskCacheConfig()
+    {
+        return diskCacheConfig_;
+    }
+
+    @JsonIgnore
+    public BufferPoolConfig getBufferPoolConfig()
+    {
+        return bufferPoolConfig_;
+    }
+
+    @JsonIgnore
+    public ReaddirConfig getReaddirConfig()
+    {
+        return readdirConfig_;
+    }
+
+    @JsonIgnore
+    public InodeMapConfig getInodeMapConfig()
+    {
+        return inodeMapConfig_;
+    }
+
+    @JsonIgnore
+    public ConnectionPoolConfig getConnectionPoolConfig()
+    {
+        return connectionPoolConfig_;
+    }
+
+    @JsonIgnore
+    public MetadataConnectionPoolConfig getMetadataConnectionPoolConfig()
+    {
+        return metadataConnectionPoolConfig_;
+    }
+
+    @JsonIgnore
+    public StatBatchingConfig getStatBatchingConfig()
+    {
+        return statBatchingConfig_;
+    }
+
+    @JsonIgnore
+    public RpcConfig getRpcConfig()
+    {
+        return rpcConfig_;
+    }
 }
@@ -0,0 +1,35 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OpenFileConfig
+{
+    private int idleTimeoutInMillis_;
+    private int maxOpenFiles_;
+
+    // @formatter:off
+    @JsonCreator
+    OpenFileConfig(@JsonProperty("idle_timeout_in_milliseconds") Integer _idleTimeoutInMillis,
+                   @JsonProperty("max_open_files")               Integer _maxOpenFiles)
+    {
+        idleTimeoutInMillis_ = ConfigUtils.valueOrDefault(_idleTimeoutInMillis, 3000);
+        maxOpenFiles_ = ConfigUtils.valueOrDefault(_maxOpenFiles, 64);
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public int getIdleTimeoutInMilliseconds()
+    {
+        return idleTimeoutInMillis_;
+    }
+
+    @JsonIgnore
+    public int getMaxOpenFiles()
+    {
+        return maxOpenFiles_;
+    }
+}
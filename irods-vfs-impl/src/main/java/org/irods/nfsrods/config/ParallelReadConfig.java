@@ -0,0 +1,58 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ParallelReadConfig
+{
+    private boolean enabled_;
+    private long minObjectSize_;
+    private int streamsPerFile_;
+    private int maxStreams_;
+
+    // @formatter:off
+    @JsonCreator
+    ParallelReadConfig(@JsonProperty("enabled")                  Boolean _enabled,
+                       @JsonProperty("min_object_size_in_bytes") Long _minObjectSize,
+                       @JsonProperty("streams_per_file")         Integer _streamsPerFile,
+                       @JsonProperty("max_streams")              Integer _maxStreams)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, true);
+        minObjectSize_ = ConfigUtils.valueOrDefault(_minObjectSize, 64L * 1024 * 1024);
+        streamsPerFile_ = ConfigUtils.valueOrDefault(_streamsPerFile, 4);
+        maxStreams_ = ConfigUtils.valueOrDefault(_maxStreams, 32);
+
+        if (streamsPerFile_ < 1 || maxStreams_ < 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: parallel_read stream counts");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public long getMinObjectSize()
+    {
+        return minObjectSize_;
+    }
+
+    @JsonIgnore
+    public int getStreamsPerFile()
+    {
+        return streamsPerFile_;
+    }
+
+    @JsonIgnore
+    public int getMaxStreams()
+    {
+        return maxStreams_;
+    }
+}
@@ -0,0 +1,58 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReadAheadConfig
+{
+    private boolean enabled_;
+    private int initialWindowSize_;
+    private int maxWindowSize_;
+    private long memoryBudget_;
+
+    // @formatter:off
+    @JsonCreator
+    ReadAheadConfig(@JsonProperty("enabled")                      Boolean _enabled,
+                    @JsonProperty("initial_window_size_in_bytes") Integer _initialWindowSize,
+                    @JsonProperty("max_window_size_in_bytes")     Integer _maxWindowSize,
+                    @JsonProperty("memory_budget_in_bytes")       Long _memoryBudget)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, true);
+        initialWindowSize_ = ConfigUtils.valueOrDefault(_initialWindowSize, 1024 * 1024);
+        maxWindowSize_ = ConfigUtils.valueOrDefault(_maxWindowSize, 16 * 1024 * 1024);
+        memoryBudget_ = ConfigUtils.valueOrDefault(_memoryBudget, 256L * 1024 * 1024);
+
+        if (initialWindowSize_ <= 0 || maxWindowSize_ < initialWindowSize_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: read_ahead window sizes");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public int getInitialWindowSize()
+    {
+        return initialWindowSize_;
+    }
+
+    @JsonIgnore
+    public int getMaxWindowSize()
+    {
+        return maxWindowSize_;
+    }
+
+    @JsonIgnore
+    public long getMemoryBudget()
+    {
+        return memoryBudget_;
+    }
+}
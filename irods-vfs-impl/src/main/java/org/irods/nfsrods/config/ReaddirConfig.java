@@ -0,0 +1,62 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReaddirConfig
+{
+    // nfs4j reports the end of a listing once the entries returned by the file
+    // system run out, so every READDIR must return more entries than fit into a
+    // reply. A 1 MiB reply holds at most this many entries of the smallest
+    // possible encoded size.
+    public static final int MIN_PAGE_SIZE = 32768;
+
+    private int pageSize_;
+    private int maxCachedListings_;
+    private int cachedListingTimeoutInMillis_;
+
+    // @formatter:off
+    @JsonCreator
+    ReaddirConfig(@JsonProperty("page_size")                              Integer _pageSize,
+                  @JsonProperty("max_cached_listings")                    Integer _maxCachedListings,
+                  @JsonProperty("cached_listing_timeout_in_milliseconds") Integer _cachedListingTimeoutInMillis)
+    {
+        pageSize_ = ConfigUtils.valueOrDefault(_pageSize, MIN_PAGE_SIZE);
+        maxCachedListings_ = ConfigUtils.valueOrDefault(_maxCachedListings, 16);
+        cachedListingTimeoutInMillis_ = ConfigUtils.valueOrDefault(_cachedListingTimeoutInMillis, 10000);
+
+        if (pageSize_ < MIN_PAGE_SIZE)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: readdir page_size " +
+                                               "(must be at least " + MIN_PAGE_SIZE + ")");
+        }
+
+        if (maxCachedListings_ < 0 || cachedListingTimeoutInMillis_ <= 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: readdir listing cache");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public int getPageSize()
+    {
+        return pageSize_;
+    }
+
+    // Returns 0 if listings are not cached.
+    @JsonIgnore
+    public int getMaxCachedListings()
+    {
+        return maxCachedListings_;
+    }
+
+    @JsonIgnore
+    public int getCachedListingTimeoutInMilliseconds()
+    {
+        return cachedListingTimeoutInMillis_;
+    }
+}
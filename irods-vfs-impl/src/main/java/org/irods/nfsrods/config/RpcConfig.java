@@ -0,0 +1,73 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RpcConfig
+{
+    private int selectorThreads_;
+    private int minWorkerThreads_;
+    private int maxWorkerThreads_;
+    private int workerIdleTimeoutInMillis_;
+    private int maxQueuedRequests_;
+
+    // @formatter:off
+    @JsonCreator
+    RpcConfig(@JsonProperty("selector_threads")                    Integer _selectorThreads,
+              @JsonProperty("min_worker_threads")                  Integer _minWorkerThreads,
+              @JsonProperty("max_worker_threads")                  Integer _maxWorkerThreads,
+              @JsonProperty("worker_idle_timeout_in_milliseconds") Integer _workerIdleTimeoutInMillis,
+              @JsonProperty("max_queued_requests")                 Integer _maxQueuedRequests)
+    {
+        selectorThreads_ = ConfigUtils.valueOrDefault(_selectorThreads, 0);
+        minWorkerThreads_ = ConfigUtils.valueOrDefault(_minWorkerThreads, 16);
+        maxWorkerThreads_ = ConfigUtils.valueOrDefault(_maxWorkerThreads, 128);
+        workerIdleTimeoutInMillis_ = ConfigUtils.valueOrDefault(_workerIdleTimeoutInMillis, 60000);
+        maxQueuedRequests_ = ConfigUtils.valueOrDefault(_maxQueuedRequests, 10000);
+
+        if (selectorThreads_ < 0 || minWorkerThreads_ < 1 || maxWorkerThreads_ < minWorkerThreads_)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: rpc thread counts");
+        }
+
+        if (workerIdleTimeoutInMillis_ <= 0 || maxQueuedRequests_ < 1)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: rpc idle timeout/queue size");
+        }
+    }
+    // @formatter:on
+
+    // Returns 0 if the number of selector threads is chosen by the RPC library.
+    @JsonIgnore
+    public int getSelectorThreads()
+    {
+        return selectorThreads_;
+    }
+
+    @JsonIgnore
+    public int getMinWorkerThreads()
+    {
+        return minWorkerThreads_;
+    }
+
+    @JsonIgnore
+    public int getMaxWorkerThreads()
+    {
+        return maxWorkerThreads_;
+    }
+
+    @JsonIgnore
+    public int getWorkerIdleTimeoutInMilliseconds()
+    {
+        return workerIdleTimeoutInMillis_;
+    }
+
+    @JsonIgnore
+    public int getMaxQueuedRequests()
+    {
+        return maxQueuedRequests_;
+    }
+}
@@ -0,0 +1,49 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class StatBatchingConfig
+{
+    private boolean enabled_;
+    private int windowInMillis_;
+    private int maxBatchSize_;
+
+    // @formatter:off
+    @JsonCreator
+    StatBatchingConfig(@JsonProperty("enabled")                Boolean _enabled,
+                       @JsonProperty("window_in_milliseconds") Integer _windowInMillis,
+                       @JsonProperty("max_batch_size")         Integer _maxBatchSize)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, true);
+        windowInMillis_ = ConfigUtils.valueOrDefault(_windowInMillis, 1);
+        maxBatchSize_ = ConfigUtils.valueOrDefault(_maxBatchSize, 32);
+
+        if (windowInMillis_ < 0 || maxBatchSize_ < 1)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: stat_batching window/batch size");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public int getWindowInMilliseconds()
+    {
+        return windowInMillis_;
+    }
+
+    @JsonIgnore
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize_;
+    }
+}
@@ -0,0 +1,49 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class WriteBehindConfig
+{
+    private boolean enabled_;
+    private int bufferSize_;
+    private long memoryBudget_;
+
+    // @formatter:off
+    @JsonCreator
+    WriteBehindConfig(@JsonProperty("enabled")                Boolean _enabled,
+                      @JsonProperty("buffer_size_in_bytes")   Integer _bufferSize,
+                      @JsonProperty("memory_budget_in_bytes") Long _memoryBudget)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, true);
+        bufferSize_ = ConfigUtils.valueOrDefault(_bufferSize, 8 * 1024 * 1024);
+        memoryBudget_ = ConfigUtils.valueOrDefault(_memoryBudget, 256L * 1024 * 1024);
+
+        if (bufferSize_ <= 0 || memoryBudget_ < 0)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: write_behind buffer size");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public int getBufferSize()
+    {
+        return bufferSize_;
+    }
+
+    @JsonIgnore
+    public long getMemoryBudget()
+    {
+        return memoryBudget_;
+    }
+}
@@ -0,0 +1,72 @@
+package org.irods.nfsrods.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class WriteSpoolConfig
+{
+    private boolean enabled_;
+    private String directory_;
+    private long capacity_;
+    private int regionSize_;
+    private int transferThreads_;
+
+    // @formatter:off
+    @JsonCreator
+    WriteSpoolConfig(@JsonProperty("enabled")              Boolean _enabled,
+                     @JsonProperty("directory")            String _directory,
+                     @JsonProperty("capacity_in_bytes")    Long _capacity,
+                     @JsonProperty("region_size_in_bytes") Integer _regionSize,
+                     @JsonProperty("transfer_threads")     Integer _transferThreads)
+    {
+        enabled_ = ConfigUtils.valueOrDefault(_enabled, false);
+        directory_ = _directory;
+        capacity_ = ConfigUtils.valueOrDefault(_capacity, 10L * 1024 * 1024 * 1024);
+        regionSize_ = ConfigUtils.valueOrDefault(_regionSize, 64 * 1024 * 1024);
+        transferThreads_ = ConfigUtils.valueOrDefault(_transferThreads, 4);
+
+        if (enabled_)
+        {
+            ConfigUtils.throwIfNull(_directory, "write_spool.directory");
+        }
+
+        if (regionSize_ <= 0 || capacity_ < regionSize_ || transferThreads_ < 1)
+        {
+            throw new IllegalArgumentException("Invalid server configuration option: write_spool sizes/threads");
+        }
+    }
+    // @formatter:on
+
+    @JsonIgnore
+    public boolean isEnabled()
+    {
+        return enabled_;
+    }
+
+    @JsonIgnore
+    public String getDirectory()
+    {
+        return directory_;
+    }
+
+    @JsonIgnore
+    public long getCapacity()
+    {
+        return capacity_;
+    }
+
+    @JsonIgnore
+    public int getRegionSize()
+    {
+        return regionSize_;
+    }
+
+    @JsonIgnore
+    public int getTransferThreads()
+    {
+        return transferThreads_;
+    }
+}
@@ -0,0 +1,38 @@
+package org.irods.nfsrods.utils;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class JMXUtils
+{
+    private static final Logger log_ = LoggerFactory.getLogger(JMXUtils.class);
+
+    private static final String DOMAIN = "org.irods.nfsrods";
+
+    private JMXUtils() {}
+
+    // Registers the MXBean under "org.irods.nfsrods:type=<_type>". Failures are
+    // logged and otherwise ignored. Metrics are not essential to serving requests.
+    public static void registerMXBean(Object _mxbean, String _type)
+    {
+        try
+        {
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + _type);
+
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(_mxbean, name);
+        }
+        catch (Exception e)
+        {
+            log_.error("registerMXBean - Could not register [{}]: {}", _type, e.getMessage());
+        }
+    }
+}
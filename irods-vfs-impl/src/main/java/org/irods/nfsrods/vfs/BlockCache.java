@@ -0,0 +1,462 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.irods.nfsrods.config.BlockCacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// An LRU cache of data object contents split into fixed-size blocks. Block
+// contents are stored outside of the Java heap in direct buffers that are
+// allocated once and recycled, so cached data does not add GC pressure.
+//
+// Blocks are keyed by path, modify time and size of the data object, so a
+// modified data object never matches blocks cached for a previous version.
+//
+// The cache is split into segments, each with its own lock, LRU order and share
+// of the capacity. A block is assigned to a segment by the hash of its key, so
+// the blocks of a single data object are spread over all segments. Locks are
+// only held for bookkeeping. Block contents are copied outside of them while the
+// block is pinned, which keeps it from being reused in the meantime.
+//
+// If a disk cache is configured, blocks missing from memory are looked up
+// there before being fetched from iRODS, and fetched blocks are written to
+// both tiers.
+class BlockCache implements BlockCacheMXBean
+{
+    private static final Logger log_ = LoggerFactory.getLogger(BlockCache.class);
+
+    // The number of blocks allocated at once when the cache grows.
+    private static final int MAX_BLOCKS_PER_SLAB = 64;
+
+    // Must be a power of two.
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int blockSize_;
+    private final int blockCount_;
+    private final int blocksPerSlab_;
+    private final Segment[] segments_;
+    private final DiskBlockCache diskCache_;
+    private final BufferPool bufferPool_;
+
+    private final LongAdder hits_;
+    private final LongAdder misses_;
+    private final LongAdder evictions_;
+
+    @FunctionalInterface
+    interface BlockReader
+    {
+        int read(byte[] _buffer, long _offset, int _count) throws IOException;
+    }
+
+    BlockCache(BlockCacheConfig _config, DiskBlockCache _diskCache, BufferPool _bufferPool)
+    {
+        blockSize_ = _config.getBlockSize();
+        blockCount_ = (int) Math.min(Integer.MAX_VALUE, _config.getCapacity() / blockSize_);
+        blocksPerSlab_ = Math.max(1, Math.min(MAX_BLOCKS_PER_SLAB, Integer.MAX_VALUE / blockSize_));
+        segments_ = new Segment[Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, blockCount_)))];
+        diskCache_ = _diskCache;
+        bufferPool_ = _bufferPool;
+        hits_ = new LongAdder();
+        misses_ = new LongAdder();
+        evictions_ = new LongAdder();
+
+        for (int i = 0; i < segments_.length; ++i)
+        {
+            int capacity = blockCount_ / segments_.length + ((i < blockCount_ % segments_.length) ? 1 : 0);
+            segments_[i] = new Segment(capacity);
+        }
+
+        log_.info("BlockCache - Capacity = {} blocks of {} bytes in {} segments.", blockCount_, blockSize_,
+                  segments_.length);
+    }
+
+    static String makeKey(String _path, long _mtime, long _size)
+    {
+        return _path + "#" + _mtime + "#" + _size;
+    }
+
+    // Serves the read from cached blocks, fetching missing blocks through
+    // "_reader" and caching them. "_objectKey" must come from makeKey() for
+    // "_path" and "_size" must be the size the key was made with. Returns 0
+    // at the end of the data object.
+    int read(String _path, String _objectKey, long _size, byte[] _buffer, long _offset, int _count,
+             BlockReader _reader)
+        throws IOException
+    {
+        int copied = 0;
+
+        while (copied < _count)
+        {
+            long position = _offset + copied;
+
+            if (position >= _size)
+            {
+                break;
+            }
+
+            long blockNumber = position / blockSize_;
+            long blockStart = blockNumber * blockSize_;
+            int blockLength = (int) Math.min(blockSize_, _size - blockStart);
+            int blockOffset = (int) (position - blockStart);
+            int n = Math.min(_count - copied, blockLength - blockOffset);
+            String key = _objectKey + "#" + blockNumber;
+
+            if (copyFromCache(key, _buffer, copied, blockOffset, n))
+            {
+                hits_.increment();
+            }
+            else
+            {
+                misses_.increment();
+
+                byte[] block = bufferPool_.acquire(blockSize_);
+
+                try
+                {
+                    if (diskCache_ == null || !diskCache_.get(key, block, blockLength))
+                    {
+                        int bytesRead = readFully(_reader, block, blockStart, blockLength);
+
+                        if (bytesRead < blockLength)
+                        {
+                            // The data object is shorter than the catalog claims, so
+                            // do not cache anything.
+                            int available = Math.max(0, Math.min(n, bytesRead - blockOffset));
+                            System.arraycopy(block, blockOffset, _buffer, copied, available);
+                            return copied + available;
+                        }
+
+                        if (diskCache_ != null)
+                        {
+                            diskCache_.put(key, _path, block, blockLength);
+                        }
+                    }
+
+                    put(key, _path, block, blockLength);
+                    System.arraycopy(block, blockOffset, _buffer, copied, n);
+                }
+                finally
+                {
+                    bufferPool_.release(block);
+                }
+            }
+
+            copied += n;
+        }
+
+        return copied;
+    }
+
+    // Drops all blocks cached for the path, regardless of modify time and size.
+    void invalidate(String _path)
+    {
+        if (diskCache_ != null)
+        {
+            diskCache_.invalidate(_path);
+        }
+
+        for (Segment segment : segments_)
+        {
+            segment.invalidate(_path);
+        }
+    }
+
+    void close()
+    {
+        if (diskCache_ != null)
+        {
+            diskCache_.close();
+        }
+    }
+
+    @Override
+    public long getCapacityInBytes()
+    {
+        return (long) blockCount_ * blockSize_;
+    }
+
+    @Override
+    public long getUsedBytes()
+    {
+        long blocks = 0;
+
+        for (Segment segment : segments_)
+        {
+            blocks += segment.size();
+        }
+
+        return blocks * blockSize_;
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits_.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses_.sum();
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictions_.sum();
+    }
+
+    private Segment segmentFor(String _key)
+    {
+        int h = _key.hashCode();
+        return segments_[(h ^ (h >>> 16)) & (segments_.length - 1)];
+    }
+
+    private boolean copyFromCache(String _key, byte[] _buffer, int _bufferOffset, int _blockOffset, int _count)
+    {
+        Segment segment = segmentFor(_key);
+        Block block = segment.pin(_key, _blockOffset + _count);
+
+        if (block == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            ByteBuffer bb = segment.slice(block.slot_);
+            bb.position(bb.position() + _blockOffset);
+            bb.get(_buffer, _bufferOffset, _count);
+        }
+        finally
+        {
+            segment.unpin(block);
+        }
+
+        return true;
+    }
+
+    private void put(String _key, String _path, byte[] _data, int _length)
+    {
+        Segment segment = segmentFor(_key);
+        int slot = segment.reserveSlot(_key);
+
+        if (slot < 0)
+        {
+            return;
+        }
+
+        // The slot is not reachable through the map yet, so no other thread
+        // reads or writes it.
+        segment.slice(slot).put(_data, 0, _length);
+        segment.insert(_key, new Block(slot, _length, _path));
+    }
+
+    private static int readFully(BlockReader _reader, byte[] _buffer, long _offset, int _count) throws IOException
+    {
+        int total = 0;
+
+        while (total < _count)
+        {
+            byte[] buffer = (total == 0) ? _buffer : new byte[_count - total];
+            int bytesRead = _reader.read(buffer, _offset + total, _count - total);
+
+            if (bytesRead <= 0)
+            {
+                break;
+            }
+
+            if (buffer != _buffer)
+            {
+                System.arraycopy(buffer, 0, _buffer, total, bytesRead);
+            }
+
+            total += bytesRead;
+        }
+
+        return total;
+    }
+
+    private final class Segment
+    {
+        private final int capacity_;
+        private final ByteBuffer[] slabs_;
+        private final int[] freeSlots_;
+        private final LinkedHashMap<String, Block> blocks_; // Key: <path>#<mtime>#<size>#<block_number>
+        private final Map<String, Set<String>> keysByPath_;
+
+        // These members are guarded by "this".
+        private int freeSlotCount_;
+        private int nextUnusedSlot_;
+
+        Segment(int _capacity)
+        {
+            capacity_ = _capacity;
+            slabs_ = new ByteBuffer[(_capacity + blocksPerSlab_ - 1) / blocksPerSlab_];
+            freeSlots_ = new int[_capacity];
+            blocks_ = new LinkedHashMap<>(16, 0.75f, true);
+            keysByPath_ = new HashMap<>();
+        }
+
+        // Returns the block if it holds at least "_length" bytes. The block is
+        // not reused until unpin() has been called for it.
+        synchronized Block pin(String _key, int _length)
+        {
+            Block block = blocks_.get(_key);
+
+            if (block == null || block.length_ < _length)
+            {
+                return null;
+            }
+
+            ++block.pins_;
+
+            return block;
+        }
+
+        synchronized void unpin(Block _block)
+        {
+            if (--_block.pins_ == 0 && _block.removed_)
+            {
+                freeSlots_[freeSlotCount_++] = _block.slot_;
+            }
+        }
+
+        // Returns a slot that is owned by the caller until it is passed to
+        // insert(), or -1 if the block is cached already or every block is pinned.
+        synchronized int reserveSlot(String _key)
+        {
+            return blocks_.containsKey(_key) ? -1 : allocateSlot();
+        }
+
+        synchronized void insert(String _key, Block _block)
+        {
+            if (blocks_.containsKey(_key))
+            {
+                // Cached by another thread in the meantime.
+                freeSlots_[freeSlotCount_++] = _block.slot_;
+                return;
+            }
+
+            blocks_.put(_key, _block);
+            keysByPath_.computeIfAbsent(_block.path_, k -> new HashSet<>()).add(_key);
+        }
+
+        synchronized void invalidate(String _path)
+        {
+            Set<String> keys = keysByPath_.remove(_path);
+
+            if (keys != null)
+            {
+                keys.forEach(k -> release(blocks_.remove(k)));
+            }
+        }
+
+        synchronized int size()
+        {
+            return blocks_.size();
+        }
+
+        // Slabs are only written while holding the lock. A slot obtained from the
+        // segment is always backed by a slab that is visible to the caller.
+        ByteBuffer slice(int _slot)
+        {
+            ByteBuffer bb = slabs_[_slot / blocksPerSlab_].duplicate();
+            int position = (_slot % blocksPerSlab_) * blockSize_;
+            bb.limit(position + blockSize_);
+            bb.position(position);
+            return bb;
+        }
+
+        // Must be called while holding the lock.
+        private int allocateSlot()
+        {
+            if (freeSlotCount_ > 0)
+            {
+                return freeSlots_[--freeSlotCount_];
+            }
+
+            if (nextUnusedSlot_ < capacity_)
+            {
+                int slot = nextUnusedSlot_++;
+                int slab = slot / blocksPerSlab_;
+
+                if (slabs_[slab] == null)
+                {
+                    int blocks = Math.min(blocksPerSlab_, capacity_ - slab * blocksPerSlab_);
+                    slabs_[slab] = ByteBuffer.allocateDirect(blocks * blockSize_);
+                }
+
+                return slot;
+            }
+
+            // Evict the least recently used block that is not being read.
+            for (Iterator<Map.Entry<String, Block>> it = blocks_.entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry<String, Block> e = it.next();
+                Block block = e.getValue();
+
+                if (block.pins_ == 0)
+                {
+                    it.remove();
+                    unindex(e.getKey(), block);
+                    evictions_.increment();
+                    return block.slot_;
+                }
+            }
+
+            return -1;
+        }
+
+        // Must be called while holding the lock.
+        private void release(Block _block)
+        {
+            if (_block.pins_ == 0)
+            {
+                freeSlots_[freeSlotCount_++] = _block.slot_;
+            }
+            else
+            {
+                _block.removed_ = true;
+            }
+        }
+
+        // Must be called while holding the lock.
+        private void unindex(String _key, Block _block)
+        {
+            Set<String> keys = keysByPath_.get(_block.path_);
+
+            if (keys != null && keys.remove(_key) && keys.isEmpty())
+            {
+                keysByPath_.remove(_block.path_);
+            }
+        }
+    }
+
+    private static final class Block
+    {
+        final int slot_;
+        final int length_;
+        final String path_;
+
+        // These members are guarded by the segment holding the block.
+        int pins_;
+        boolean removed_;
+
+        Block(int _slot, int _length, String _path)
+        {
+            slot_ = _slot;
+            length_ = _length;
+            path_ = _path;
+        }
+    }
+}
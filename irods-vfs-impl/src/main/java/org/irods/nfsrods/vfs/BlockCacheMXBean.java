@@ -0,0 +1,14 @@
+package org.irods.nfsrods.vfs;
+
+public interface BlockCacheMXBean
+{
+    long getCapacityInBytes();
+
+    long getUsedBytes();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+}
@@ -0,0 +1,116 @@
+package org.irods.nfsrods.vfs;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.irods.nfsrods.config.BufferPoolConfig;
+
+// A pool of reusable buffers for the large transfer buffers of the data path
+// (read-ahead chunks, write-behind buffers and block cache fills). Only a few
+// distinct sizes are used, so buffers are pooled by exact size.
+//
+// The buffers are heap arrays because both ends of the data path take arrays:
+// nfs4j passes READ/WRITE payloads as byte[] and Jargon streams read from and
+// write to byte[]. A direct buffer in between would add a copy.
+//
+// Idle buffers are kept up to the configured capacity, anything beyond that is
+// left to the garbage collector.
+class BufferPool implements BufferPoolMXBean
+{
+    private final long capacity_;
+    private final ConcurrentMap<Integer, Queue<byte[]>> freeLists_; // Key: <buffer_size>
+    private final AtomicLong pooledBytes_;
+    private final AtomicLong bytesInUse_;
+    private final LongAdder allocations_;
+    private final LongAdder reuses_;
+
+    BufferPool(BufferPoolConfig _config)
+    {
+        capacity_ = _config.getCapacity();
+        freeLists_ = new ConcurrentHashMap<>();
+        pooledBytes_ = new AtomicLong();
+        bytesInUse_ = new AtomicLong();
+        allocations_ = new LongAdder();
+        reuses_ = new LongAdder();
+    }
+
+    // The returned buffer may contain data of its previous user.
+    byte[] acquire(int _size)
+    {
+        bytesInUse_.addAndGet(_size);
+
+        byte[] buffer = freeList(_size).poll();
+
+        if (buffer != null)
+        {
+            pooledBytes_.addAndGet(-_size);
+            reuses_.increment();
+            return buffer;
+        }
+
+        allocations_.increment();
+
+        return new byte[_size];
+    }
+
+    // The caller must not access the buffer afterwards.
+    void release(byte[] _buffer)
+    {
+        bytesInUse_.addAndGet(-_buffer.length);
+
+        if (pooledBytes_.addAndGet(_buffer.length) <= capacity_)
+        {
+            freeList(_buffer.length).offer(_buffer);
+        }
+        else
+        {
+            pooledBytes_.addAndGet(-_buffer.length);
+        }
+    }
+
+    // For buffers that may still be in use by someone else (e.g. a task that
+    // could not be cancelled). They are left to the garbage collector.
+    void discard(byte[] _buffer)
+    {
+        bytesInUse_.addAndGet(-_buffer.length);
+    }
+
+    @Override
+    public long getCapacityInBytes()
+    {
+        return capacity_;
+    }
+
+    @Override
+    public long getPooledBytes()
+    {
+        return pooledBytes_.get();
+    }
+
+    @Override
+    public long getBytesInUse()
+    {
+        return bytesInUse_.get();
+    }
+
+    @Override
+    public long getAllocationCount()
+    {
+        return allocations_.sum();
+    }
+
+    @Override
+    public long getReuseCount()
+    {
+        return reuses_.sum();
+    }
+
+    private Queue<byte[]> freeList(int _size)
+    {
+        return freeLists_.computeIfAbsent(_size, k -> new ConcurrentLinkedQueue<>());
+    }
+}
@@ -0,0 +1,14 @@
+package org.irods.nfsrods.vfs;
+
+public interface BufferPoolMXBean
+{
+    long getCapacityInBytes();
+
+    long getPooledBytes();
+
+    long getBytesInUse();
+
+    long getAllocationCount();
+
+    long getReuseCount();
+}
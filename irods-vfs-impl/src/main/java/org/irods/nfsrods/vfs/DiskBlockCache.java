@@ -0,0 +1,512 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.irods.nfsrods.config.DiskCacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// The second tier of the block cache. Blocks evicted from memory are still
+// found here, and because the cache lives in files on local disk (ideally an
+// SSD) it stays warm across restarts.
+//
+// Block contents are stored in memory-mapped segment files. The index is a
+// memory-mapped array of fixed-size records, one per block slot, so it is
+// always up to date on disk and loading it at startup is a single scan.
+// Records identify blocks by a digest of the block key, which includes the
+// modify time and size of the data object, and carry a CRC32 of the block so
+// that blocks torn by a crash are detected and dropped instead of served.
+//
+// The lock only covers the bookkeeping. Blocks are copied and checksummed
+// outside of it, which may fault pages in from disk, while their slot is pinned
+// so that it is not reused in the meantime.
+class DiskBlockCache implements DiskBlockCacheMXBean
+{
+    private static final Logger log_ = LoggerFactory.getLogger(DiskBlockCache.class);
+
+    private static final long INDEX_MAGIC = 0x4E4653524F445343L; // "NFSRODSC"
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+
+    // Record layout.
+    private static final int RECORD_STATE = 0;       // int
+    private static final int RECORD_LENGTH = 4;      // int
+    private static final int RECORD_CRC = 8;         // int
+    private static final int RECORD_KEY_HIGH = 16;   // long
+    private static final int RECORD_KEY_LOW = 24;    // long
+    private static final int RECORD_PATH_HASH = 32;  // long
+    private static final int RECORD_LAST_USED = 40;  // long
+
+    private static final int STATE_FREE = 0;
+    private static final int STATE_VALID = 0x56414C44; // "VALD"
+
+    private final int blockSize_;
+    private final int blockCount_;
+    private final int blocksPerSegment_;
+    private final MappedByteBuffer index_;
+    private final MappedByteBuffer[] segments_;
+    private final int[] freeSlots_;
+    private final LinkedHashMap<UUID, Entry> entries_; // Key: digest of <path>#<mtime>#<size>#<block_number>
+    private final Map<Long, Set<UUID>> keysByPathHash_;
+
+    // These members are guarded by "entries_".
+    private int freeSlotCount_;
+
+    private final LongAdder hits_;
+    private final LongAdder misses_;
+    private final LongAdder evictions_;
+    private final LongAdder corruptBlocks_;
+
+    DiskBlockCache(DiskCacheConfig _config, int _blockSize) throws IOException
+    {
+        if (_config.getSegmentSize() < _blockSize)
+        {
+            throw new IllegalArgumentException("Disk cache segment size is smaller than the block size");
+        }
+
+        blockSize_ = _blockSize;
+        blocksPerSegment_ = _config.getSegmentSize() / _blockSize;
+        blockCount_ = (int) Math.min(Integer.MAX_VALUE / RECORD_SIZE - 1, _config.getCapacity() / _blockSize);
+        segments_ = new MappedByteBuffer[(blockCount_ + blocksPerSegment_ - 1) / blocksPerSegment_];
+        freeSlots_ = new int[blockCount_];
+        entries_ = new LinkedHashMap<>(16, 0.75f, true);
+        keysByPathHash_ = new HashMap<>();
+        hits_ = new LongAdder();
+        misses_ = new LongAdder();
+        evictions_ = new LongAdder();
+        corruptBlocks_ = new LongAdder();
+
+        Path directory = Paths.get(_config.getDirectory());
+        Files.createDirectories(directory);
+
+        index_ = map(directory.resolve("index"), INDEX_HEADER_SIZE + (long) blockCount_ * RECORD_SIZE);
+        boolean reset = !isCompatibleIndex();
+
+        for (int i = 0; i < segments_.length; ++i)
+        {
+            int blocks = Math.min(blocksPerSegment_, blockCount_ - i * blocksPerSegment_);
+            segments_[i] = map(directory.resolve("segment-" + i), (long) blocks * _blockSize);
+        }
+
+        if (reset)
+        {
+            log_.info("DiskBlockCache - Initializing new cache in [{}].", directory);
+            initializeIndex();
+        }
+
+        loadIndex();
+
+        log_.info("DiskBlockCache - Capacity = {} blocks of {} bytes, {} blocks loaded from [{}].",
+                  blockCount_, blockSize_, entries_.size(), directory);
+    }
+
+    // Copies the block into "_buffer" if it is cached. Returns false on a miss.
+    boolean get(String _key, byte[] _buffer, int _length)
+    {
+        UUID key = digest(_key);
+        Entry entry;
+
+        synchronized (entries_)
+        {
+            entry = entries_.get(key);
+
+            if (entry == null || entry.length_ != _length)
+            {
+                misses_.increment();
+                return false;
+            }
+
+            ++entry.pins_;
+        }
+
+        slice(entry.slot_).get(_buffer, 0, _length);
+        boolean valid = crc32(_buffer, _length) == entry.crc_;
+
+        synchronized (entries_)
+        {
+            if (!valid && !entry.removed_)
+            {
+                log_.warn("DiskBlockCache - Dropping corrupt block in slot {}.", entry.slot_);
+                corruptBlocks_.increment();
+                remove(key, entry);
+            }
+            else if (valid && !entry.removed_)
+            {
+                record(entry.slot_).putLong(RECORD_LAST_USED, System.currentTimeMillis());
+            }
+
+            unpin(entry);
+        }
+
+        if (!valid)
+        {
+            misses_.increment();
+            return false;
+        }
+
+        hits_.increment();
+
+        return true;
+    }
+
+    void put(String _key, String _path, byte[] _data, int _length)
+    {
+        UUID key = digest(_key);
+        long pathHash = pathHash(_path);
+        int slot;
+
+        synchronized (entries_)
+        {
+            if (entries_.containsKey(key) || (slot = allocateSlot()) < 0)
+            {
+                return;
+            }
+
+            record(slot).putInt(RECORD_STATE, STATE_FREE);
+        }
+
+        // The slot is not reachable through the index yet, so no other thread
+        // reads or writes it. The record is only marked valid after the block
+        // has been written.
+        int crc = crc32(_data, _length);
+        ByteBuffer record = record(slot);
+        slice(slot).put(_data, 0, _length);
+        record.putInt(RECORD_LENGTH, _length);
+        record.putInt(RECORD_CRC, crc);
+        record.putLong(RECORD_KEY_HIGH, key.getMostSignificantBits());
+        record.putLong(RECORD_KEY_LOW, key.getLeastSignificantBits());
+        record.putLong(RECORD_PATH_HASH, pathHash);
+        record.putLong(RECORD_LAST_USED, System.currentTimeMillis());
+        record.putInt(RECORD_STATE, STATE_VALID);
+
+        synchronized (entries_)
+        {
+            if (entries_.containsKey(key))
+            {
+                // Cached by another thread in the meantime.
+                free(slot);
+                return;
+            }
+
+            add(key, new Entry(slot, _length, pathHash, crc));
+        }
+    }
+
+    // Drops all blocks cached for the path. Blocks of other paths that share
+    // the path hash are dropped as well, which is harmless.
+    void invalidate(String _path)
+    {
+        long pathHash = pathHash(_path);
+
+        synchronized (entries_)
+        {
+            Set<UUID> keys = keysByPathHash_.get(pathHash);
+
+            if (keys != null)
+            {
+                new ArrayList<>(keys).forEach(k -> remove(k, entries_.get(k)));
+            }
+        }
+    }
+
+    // Writes all dirty pages of the cache files to disk.
+    void close()
+    {
+        synchronized (entries_)
+        {
+            for (MappedByteBuffer segment : segments_)
+            {
+                segment.force();
+            }
+
+            index_.force();
+        }
+    }
+
+    @Override
+    public long getCapacityInBytes()
+    {
+        return (long) blockCount_ * blockSize_;
+    }
+
+    @Override
+    public long getUsedBytes()
+    {
+        synchronized (entries_)
+        {
+            return (long) entries_.size() * blockSize_;
+        }
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits_.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses_.sum();
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictions_.sum();
+    }
+
+    @Override
+    public long getCorruptBlockCount()
+    {
+        return corruptBlocks_.sum();
+    }
+
+    private boolean isCompatibleIndex()
+    {
+        // @formatter:off
+        return index_.getLong(0) == INDEX_MAGIC &&
+               index_.getInt(8) == INDEX_VERSION &&
+               index_.getInt(12) == blockSize_ &&
+               index_.getInt(16) == blockCount_ &&
+               index_.getInt(20) == blocksPerSegment_;
+        // @formatter:on
+    }
+
+    private void initializeIndex()
+    {
+        for (int slot = 0; slot < blockCount_; ++slot)
+        {
+            record(slot).putInt(RECORD_STATE, STATE_FREE);
+        }
+
+        index_.putInt(8, INDEX_VERSION);
+        index_.putInt(12, blockSize_);
+        index_.putInt(16, blockCount_);
+        index_.putInt(20, blocksPerSegment_);
+        index_.putLong(0, INDEX_MAGIC);
+        index_.force();
+    }
+
+    // Rebuilds the in-memory index from the records, oldest first, so that
+    // the LRU order survives restarts.
+    private void loadIndex()
+    {
+        List<long[]> used = new ArrayList<>(); // Elements: [last_used, slot]
+
+        for (int slot = blockCount_ - 1; slot >= 0; --slot)
+        {
+            ByteBuffer record = record(slot);
+            int length = record.getInt(RECORD_LENGTH);
+
+            if (record.getInt(RECORD_STATE) == STATE_VALID && length > 0 && length <= blockSize_)
+            {
+                used.add(new long[] {record.getLong(RECORD_LAST_USED), slot});
+            }
+            else
+            {
+                record.putInt(RECORD_STATE, STATE_FREE);
+                freeSlots_[freeSlotCount_++] = slot;
+            }
+        }
+
+        used.sort(Comparator.comparingLong(e -> e[0]));
+
+        for (long[] e : used)
+        {
+            int slot = (int) e[1];
+            ByteBuffer record = record(slot);
+            UUID key = new UUID(record.getLong(RECORD_KEY_HIGH), record.getLong(RECORD_KEY_LOW));
+            Entry entry = new Entry(slot, record.getInt(RECORD_LENGTH), record.getLong(RECORD_PATH_HASH),
+                                    record.getInt(RECORD_CRC));
+
+            // A crash between writing a block and freeing its duplicate may leave
+            // two valid records for the same key.
+            if (entries_.containsKey(key))
+            {
+                free(slot);
+            }
+            else
+            {
+                add(key, entry);
+            }
+        }
+    }
+
+    // Must be called while holding the lock on "entries_". Returns -1 if every
+    // slot is in use and pinned.
+    private int allocateSlot()
+    {
+        if (freeSlotCount_ > 0)
+        {
+            return freeSlots_[--freeSlotCount_];
+        }
+
+        // Evict the least recently used block that is not being read.
+        for (Map.Entry<UUID, Entry> e : entries_.entrySet())
+        {
+            Entry entry = e.getValue();
+
+            if (entry.pins_ == 0)
+            {
+                remove(e.getKey(), entry);
+                evictions_.increment();
+                return freeSlots_[--freeSlotCount_];
+            }
+        }
+
+        return -1;
+    }
+
+    // Must be called while holding the lock on "entries_".
+    private void add(UUID _key, Entry _entry)
+    {
+        entries_.put(_key, _entry);
+        keysByPathHash_.computeIfAbsent(_entry.pathHash_, k -> new HashSet<>()).add(_key);
+    }
+
+    // Must be called while holding the lock on "entries_". The slot of a pinned
+    // entry is freed once it has been unpinned.
+    private void remove(UUID _key, Entry _entry)
+    {
+        entries_.remove(_key);
+        _entry.removed_ = true;
+
+        Set<UUID> keys = keysByPathHash_.get(_entry.pathHash_);
+
+        if (keys != null && keys.remove(_key) && keys.isEmpty())
+        {
+            keysByPathHash_.remove(_entry.pathHash_);
+        }
+
+        if (_entry.pins_ == 0)
+        {
+            free(_entry.slot_);
+        }
+        else
+        {
+            // Keeps a crash from resurrecting the entry.
+            record(_entry.slot_).putInt(RECORD_STATE, STATE_FREE);
+        }
+    }
+
+    // Must be called while holding the lock on "entries_".
+    private void unpin(Entry _entry)
+    {
+        if (--_entry.pins_ == 0 && _entry.removed_)
+        {
+            free(_entry.slot_);
+        }
+    }
+
+    // Must be called while holding the lock on "entries_".
+    private void free(int _slot)
+    {
+        record(_slot).putInt(RECORD_STATE, STATE_FREE);
+        freeSlots_[freeSlotCount_++] = _slot;
+    }
+
+    // Slots are only read or written by a thread that has allocated or pinned
+    // them while holding the lock on "entries_".
+    private ByteBuffer slice(int _slot)
+    {
+        ByteBuffer bb = segments_[_slot / blocksPerSegment_].duplicate();
+        int position = (_slot % blocksPerSegment_) * blockSize_;
+        bb.limit(position + blockSize_);
+        bb.position(position);
+        return bb;
+    }
+
+    // Records are only written by a thread that has allocated the slot or holds
+    // the lock on "entries_".
+    private ByteBuffer record(int _slot)
+    {
+        ByteBuffer bb = index_.duplicate();
+        int position = INDEX_HEADER_SIZE + _slot * RECORD_SIZE;
+        bb.limit(position + RECORD_SIZE);
+        bb.position(position);
+        return bb.slice();
+    }
+
+    private static MappedByteBuffer map(Path _file, long _size) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(_file.toFile(), "rw"))
+        {
+            if (raf.length() != _size)
+            {
+                raf.setLength(_size);
+            }
+
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, _size);
+        }
+    }
+
+    private static UUID digest(String _key)
+    {
+        try
+        {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(_key.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer bb = ByteBuffer.wrap(md5);
+            return new UUID(bb.getLong(), bb.getLong());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to support MD5.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long pathHash(String _path)
+    {
+        return digest(_path).getMostSignificantBits();
+    }
+
+    private static int crc32(byte[] _data, int _length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(_data, 0, _length);
+        return (int) crc.getValue();
+    }
+
+    private static final class Entry
+    {
+        final int slot_;
+        final int length_;
+        final long pathHash_;
+        final int crc_;
+
+        // These members are guarded by "entries_".
+        int pins_;
+        boolean removed_;
+
+        Entry(int _slot, int _length, long _pathHash, int _crc)
+        {
+            slot_ = _slot;
+            length_ = _length;
+            pathHash_ = _pathHash;
+            crc_ = _crc;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.irods.nfsrods.vfs;
+
+public interface DiskBlockCacheMXBean
+{
+    long getCapacityInBytes();
+
+    long getUsedBytes();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    long getCorruptBlockCount();
+}
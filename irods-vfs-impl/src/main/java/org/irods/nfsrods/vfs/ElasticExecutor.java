@@ -0,0 +1,197 @@
+package org.irods.nfsrods.vfs;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.irods.nfsrods.config.RpcConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Executes NFS requests handed over by the RPC selector threads.
+//
+// Most of the time of a request is spent waiting on iRODS, so when no thread is
+// idle the pool starts a new one as long as it is below its maximum size,
+// instead of queueing behind busy threads the way a plain ThreadPoolExecutor
+// does.
+// Threads above the minimum exit after being idle for a while. Once all threads
+// are busy, tasks are queued. Once the queue is full too, the submitting
+// selector thread waits for room in the queue. It stops reading from its
+// connections meanwhile, so TCP flow control slows the clients down. Dropping
+// the request instead would hang the client: NFSv4 clients do not retransmit
+// on a live TCP connection, and an NFSv4.1 session slot would stay busy.
+// Running it on the selector thread would stall that thread for as long as the
+// request takes, not just until a worker is free.
+class ElasticExecutor extends ThreadPoolExecutor implements ElasticExecutorMXBean
+{
+    private static final Logger log_ = LoggerFactory.getLogger(ElasticExecutor.class);
+
+    // How long a submitting thread waits for room in the queue before it logs a
+    // warning and checks whether the executor has been shut down.
+    private static final long QUEUE_WAIT_TIME_IN_MILLIS = 5000;
+
+    // Tasks that have been submitted but have not finished yet.
+    private final AtomicInteger submittedTasks_ = new AtomicInteger();
+    private final AtomicLong blockedSubmissions_ = new AtomicLong();
+    private final AtomicLong totalBlockedTimeInNanos_ = new AtomicLong();
+
+    ElasticExecutor(RpcConfig _config)
+    {
+        super(_config.getMinWorkerThreads(),
+              _config.getMaxWorkerThreads(),
+              _config.getWorkerIdleTimeoutInMilliseconds(),
+              TimeUnit.MILLISECONDS,
+              new TaskQueue(_config.getMaxQueuedRequests()),
+              new WorkerThreadFactory());
+
+        ((TaskQueue) getQueue()).executor_ = this;
+        setRejectedExecutionHandler(new SaturationPolicy());
+    }
+
+    @Override
+    public void execute(Runnable _task)
+    {
+        submittedTasks_.incrementAndGet();
+
+        try
+        {
+            super.execute(_task);
+        }
+        catch (RuntimeException | Error e)
+        {
+            submittedTasks_.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable _task, Throwable _t)
+    {
+        submittedTasks_.decrementAndGet();
+    }
+
+    @Override
+    public int getQueuedTaskCount()
+    {
+        return getQueue().size();
+    }
+
+    @Override
+    public long getBlockedSubmissionCount()
+    {
+        return blockedSubmissions_.get();
+    }
+
+    @Override
+    public long getTotalBlockedTimeInMilliseconds()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(totalBlockedTimeInNanos_.get());
+    }
+
+    private static final class TaskQueue extends LinkedBlockingQueue<Runnable>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private transient volatile ElasticExecutor executor_;
+
+        TaskQueue(int _capacity)
+        {
+            super(_capacity);
+        }
+
+        // Refusing the task makes the executor start a new thread for it. If
+        // that fails because the pool is at its maximum size, the executor
+        // hands the task to SaturationPolicy, which queues it after all.
+        @Override
+        public boolean offer(Runnable _task)
+        {
+            ElasticExecutor executor = executor_;
+
+            if (executor != null)
+            {
+                int poolSize = executor.getPoolSize();
+
+                if (executor.submittedTasks_.get() > poolSize && poolSize < executor.getMaximumPoolSize())
+                {
+                    return false;
+                }
+            }
+
+            return super.offer(_task);
+        }
+
+        boolean forceOffer(Runnable _task)
+        {
+            return super.offer(_task);
+        }
+
+        boolean forceOffer(Runnable _task, long _timeoutInMillis) throws InterruptedException
+        {
+            return super.offer(_task, _timeoutInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final class SaturationPolicy implements RejectedExecutionHandler
+    {
+        @Override
+        public void rejectedExecution(Runnable _task, ThreadPoolExecutor _executor)
+        {
+            TaskQueue queue = (TaskQueue) getQueue();
+
+            if (!_executor.isShutdown() && queue.forceOffer(_task))
+            {
+                return;
+            }
+
+            long start = System.nanoTime();
+
+            if (!_executor.isShutdown())
+            {
+                blockedSubmissions_.incrementAndGet();
+            }
+
+            try
+            {
+                while (!_executor.isShutdown())
+                {
+                    if (queue.forceOffer(_task, QUEUE_WAIT_TIME_IN_MILLIS))
+                    {
+                        return;
+                    }
+
+                    log_.warn("rejectedExecution - All worker threads have been busy for [{}] ms. Waiting for room ...",
+                              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                totalBlockedTimeInNanos_.addAndGet(System.nanoTime() - start);
+            }
+
+            // Only reached once the executor has been shut down or the submitting
+            // thread has been interrupted, i.e. while the server stops.
+            submittedTasks_.decrementAndGet();
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadCount_ = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable _task)
+        {
+            Thread t = new Thread(_task, "nfs-worker-" + threadCount_.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
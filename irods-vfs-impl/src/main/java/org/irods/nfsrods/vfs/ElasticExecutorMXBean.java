@@ -0,0 +1,18 @@
+package org.irods.nfsrods.vfs;
+
+public interface ElasticExecutorMXBean
+{
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getLargestPoolSize();
+
+    int getQueuedTaskCount();
+
+    long getCompletedTaskCount();
+
+    long getBlockedSubmissionCount();
+
+    long getTotalBlockedTimeInMilliseconds();
+}
@@ -0,0 +1,113 @@
+package org.irods.nfsrods.vfs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// The contents of the file handles handed out to clients.
+//
+// A handle identifies an object by its zone and its iRODS object id (data id or
+// collection id), so any NFSRODS server presenting the zone can resolve it through
+// the catalog. The inode number of the server that created the handle is kept as
+// a hint. It is the only identity of objects whose object id is not known (e.g.
+// the root of the mount). Such handles also carry the instance id of the server
+// process that created them, because the inode number means nothing to another
+// server or to the same server after a restart.
+//
+// Layout: version (1 byte), generation (4 bytes), object id (8 bytes),
+//         inode number (8 bytes), instance id (8 bytes), zone (UTF-8, remaining bytes).
+//
+// Handles of earlier versions held the inode number, optionally followed by the
+// object id. Their first byte is always 0, which is never a valid version.
+final class FileHandle
+{
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 1 + Integer.BYTES + 3 * Long.BYTES;
+
+    // NFSv4 limits handles to 128 bytes, part of which is used by nfs4j.
+    static final int MAX_ZONE_SIZE = 64;
+
+    private final long inodeNumber_;
+    private final long objectId_;
+    private final int generation_;
+    private final long instanceId_;
+    private final String zone_;
+
+    FileHandle(long _inodeNumber, long _objectId, int _generation, long _instanceId, String _zone)
+    {
+        inodeNumber_ = _inodeNumber;
+        objectId_ = _objectId;
+        generation_ = _generation;
+        instanceId_ = _instanceId;
+        zone_ = _zone;
+    }
+
+    long getInodeNumber()
+    {
+        return inodeNumber_;
+    }
+
+    // Returns 0 if the object id is not known.
+    long getObjectId()
+    {
+        return objectId_;
+    }
+
+    int getGeneration()
+    {
+        return generation_;
+    }
+
+    // Returns 0 for handles of earlier versions.
+    long getInstanceId()
+    {
+        return instanceId_;
+    }
+
+    // Returns null for handles of earlier versions.
+    String getZone()
+    {
+        return zone_;
+    }
+
+    byte[] toBytes()
+    {
+        byte[] zone = zone_.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + zone.length);
+
+        bb.put(VERSION);
+        bb.putInt(generation_);
+        bb.putLong(objectId_);
+        bb.putLong(inodeNumber_);
+        bb.putLong(instanceId_);
+        bb.put(zone);
+
+        return bb.array();
+    }
+
+    static FileHandle fromBytes(byte[] _bytes)
+    {
+        ByteBuffer bb = ByteBuffer.wrap(_bytes);
+
+        if (_bytes.length >= HEADER_SIZE && _bytes[0] == VERSION)
+        {
+            bb.get();
+            int generation = bb.getInt();
+            long objectId = bb.getLong();
+            long inodeNumber = bb.getLong();
+            long instanceId = bb.getLong();
+            String zone = new String(_bytes, HEADER_SIZE, _bytes.length - HEADER_SIZE, StandardCharsets.UTF_8);
+
+            return new FileHandle(inodeNumber, objectId, generation, instanceId, zone);
+        }
+
+        if (_bytes.length < Long.BYTES)
+        {
+            throw new IllegalArgumentException("Invalid file handle");
+        }
+
+        long inodeNumber = bb.getLong();
+        long objectId = (bb.remaining() >= Long.BYTES) ? bb.getLong() : 0;
+
+        return new FileHandle(inodeNumber, objectId, 0, 0, null);
+    }
+}
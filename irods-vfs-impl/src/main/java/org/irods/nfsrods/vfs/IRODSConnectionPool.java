@@ -0,0 +1,698 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.nfsrods.config.ConnectionPoolConfig;
+import org.irods.nfsrods.config.MetadataConnectionPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Keeps iRODS connections open across NFS requests instead of connecting and
+// authenticating for every operation.
+//
+// Jargon binds a connection to the thread that opened it, so a pooled connection
+// is an IRODSSessionThread whose session stays open between tasks. Work that
+// needs a connection of an account is run on one of that account's pooled
+// connections. Connections idle for longer than the validation interval are
+// checked before they are handed out again, connections idle for longer than
+// the idle timeout are closed, and accounts that have recently been active keep
+// a minimum number of idle connections.
+//
+// Holders that keep state on a connection across requests (e.g. open data
+// objects) get a session of their own instead (see openSession()). It is not
+// shared, but counts against the same limits until it has been closed, so the
+// limits bound every connection the server makes on behalf of users.
+//
+// The time spent waiting for a connection is tracked so that an undersized
+// pool can be recognized.
+class IRODSConnectionPool implements IRODSConnectionPoolMXBean
+{
+    private static final Logger log_ = LoggerFactory.getLogger(IRODSConnectionPool.class);
+
+    private static final long CLOSE_TIMEOUT_IN_MILLIS = 10000;
+
+    private final IRODSAccessObjectFactory factory_;
+    private final String name_;
+    private final int maxConnectionsPerUser_;
+    private final int maxConnections_;
+    private final int minIdleConnectionsPerUser_;
+    private final long idleTimeoutInMillis_;
+    private final long validationIntervalInMillis_;
+    private final long maxWaitTimeInMillis_;
+    private final ScheduledExecutorService scheduler_;
+    private final AtomicInteger threadCount_ = new AtomicInteger();
+
+    // Guarded by "this".
+    private final Map<String, UserPool> pools_ = new HashMap<>(); // Key: <username>#<zone>
+    private int openConnections_;
+    private int idleConnections_;
+    private int dedicatedConnections_;
+    private boolean closed_;
+
+    private final AtomicLong createdConnections_ = new AtomicLong();
+    private final AtomicLong reusedConnections_ = new AtomicLong();
+    private final AtomicLong closedIdleConnections_ = new AtomicLong();
+    private final AtomicLong failedValidations_ = new AtomicLong();
+    private final AtomicLong timedOutRequests_ = new AtomicLong();
+    private final AtomicLong timedOutTasks_ = new AtomicLong();
+    private final AtomicLong requests_ = new AtomicLong();
+    private final AtomicLong totalWaitTimeInNanos_ = new AtomicLong();
+    private final AtomicLong maxWaitTimeInNanos_ = new AtomicLong();
+
+    IRODSConnectionPool(IRODSAccessObjectFactory _factory, ConnectionPoolConfig _config, String _name)
+    {
+        // @formatter:off
+        this(_factory, _name,
+             _config.getMaxConnectionsPerUser(),
+             _config.getMaxConnections(),
+             _config.getMinIdleConnectionsPerUser(),
+             _config.getIdleTimeoutInMilliseconds(),
+             _config.getValidationIntervalInMilliseconds(),
+             _config.getMaxWaitTimeInMilliseconds());
+        // @formatter:on
+    }
+
+    // Creates a pool used by a single account.
+    IRODSConnectionPool(IRODSAccessObjectFactory _factory, MetadataConnectionPoolConfig _config, String _name)
+    {
+        // @formatter:off
+        this(_factory, _name,
+             _config.getMaxConnections(),
+             _config.getMaxConnections(),
+             _config.getMinIdleConnections(),
+             _config.getIdleTimeoutInMilliseconds(),
+             _config.getValidationIntervalInMilliseconds(),
+             _config.getMaxWaitTimeInMilliseconds());
+        // @formatter:on
+    }
+
+    // @formatter:off
+    private IRODSConnectionPool(IRODSAccessObjectFactory _factory,
+                                String _name,
+                                int _maxConnectionsPerUser,
+                                int _maxConnections,
+                                int _minIdleConnectionsPerUser,
+                                long _idleTimeoutInMillis,
+                                long _validationIntervalInMillis,
+                                long _maxWaitTimeInMillis)
+    // @formatter:on
+    {
+        factory_ = _factory;
+        name_ = _name;
+        maxConnectionsPerUser_ = _maxConnectionsPerUser;
+        maxConnections_ = _maxConnections;
+        minIdleConnectionsPerUser_ = _minIdleConnectionsPerUser;
+        idleTimeoutInMillis_ = _idleTimeoutInMillis;
+        validationIntervalInMillis_ = _validationIntervalInMillis;
+        maxWaitTimeInMillis_ = _maxWaitTimeInMillis;
+
+        scheduler_ = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name_ + "-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long period = Math.max(1, idleTimeoutInMillis_ / 2);
+        scheduler_.scheduleAtFixedRate(this::closeIdleConnections, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs "_task" on a pooled connection of "_acct" and waits for its result.
+    // The task must only use "_acct" through the factory. The calling thread's
+    // context (e.g. the NFS subject) is not available to it.
+    <T> T call(IRODSAccount _acct, Callable<T> _task) throws IOException
+    {
+        return call(_acct, _task, 0);
+    }
+
+    // Like call(), but gives up waiting for the result after "_timeoutInMillis"
+    // (0 waits forever). The timeout also applies to the validation of the
+    // connection. A task cannot be interrupted while it waits on iRODS, so the
+    // connection of a timed out task is closed once the task finishes. Until
+    // then it still counts against the pool limits.
+    <T> T call(IRODSAccount _acct, Callable<T> _task, long _timeoutInMillis) throws IOException
+    {
+        PooledConnection conn = borrow(_acct, _timeoutInMillis);
+        boolean failed = true;
+        boolean timedOut = false;
+
+        try
+        {
+            T result = run(conn, _task, _timeoutInMillis);
+            failed = false;
+            return result;
+        }
+        catch (IRODSSessionThread.TimedOutException e)
+        {
+            timedOutTasks_.incrementAndGet();
+            timedOut = true;
+            throw e;
+        }
+        finally
+        {
+            if (timedOut)
+            {
+                synchronized (this)
+                {
+                    abandon(conn);
+                }
+            }
+            else
+            {
+                // A failed task may have left the connection broken, e.g. after a
+                // network error. It is checked before it is used again.
+                conn.suspect_ |= failed;
+                giveBack(conn);
+            }
+        }
+    }
+
+    // Opens a session of "_acct" for a single holder, e.g. an open data object
+    // whose iRODS file descriptor is bound to the session. It counts against the
+    // pool limits until the holder closes it. Waits for a free slot like call().
+    IRODSSessionThread openSession(IRODSAccount _acct, String _threadName) throws IOException
+    {
+        long deadline = System.currentTimeMillis() + maxWaitTimeInMillis_;
+
+        synchronized (this)
+        {
+            IRODSSessionThread session;
+
+            while ((session = tryOpenSession(_acct, _threadName)) == null)
+            {
+                waitUntil(deadline, _acct);
+            }
+
+            return session;
+        }
+    }
+
+    // Like openSession(), but returns null instead of waiting for a free slot.
+    // Idle connections are closed to make room.
+    synchronized IRODSSessionThread tryOpenSession(IRODSAccount _acct, String _threadName) throws IOException
+    {
+        if (closed_)
+        {
+            throw new IOException("iRODS connection pool is closed");
+        }
+
+        UserPool pool = getUserPool(_acct);
+        pool.lastActiveTime_ = System.currentTimeMillis();
+
+        if ((pool.open_ >= maxConnectionsPerUser_ && !closeIdleConnection(pool)) ||
+            (openConnections_ >= maxConnections_ && !closeLeastRecentlyUsedConnection()))
+        {
+            return null;
+        }
+
+        ++pool.open_;
+        ++openConnections_;
+        ++dedicatedConnections_;
+        createdConnections_.incrementAndGet();
+
+        return new IRODSSessionThread(factory_, _acct, _threadName, () -> closeSession(pool));
+    }
+
+    void close()
+    {
+        List<PooledConnection> closed = new ArrayList<>();
+
+        synchronized (this)
+        {
+            closed_ = true;
+
+            for (UserPool pool : pools_.values())
+            {
+                while (!pool.idle_.isEmpty())
+                {
+                    PooledConnection conn = pool.idle_.pollFirst();
+                    discard(conn);
+                    closed.add(conn);
+                }
+            }
+
+            idleConnections_ = 0;
+            notifyAll();
+        }
+
+        scheduler_.shutdownNow();
+
+        closed.forEach(c -> c.session_.awaitClose(CLOSE_TIMEOUT_IN_MILLIS));
+    }
+
+    @Override
+    public synchronized long getOpenConnections()
+    {
+        return openConnections_;
+    }
+
+    @Override
+    public synchronized long getIdleConnections()
+    {
+        return idleConnections_;
+    }
+
+    @Override
+    public synchronized long getDedicatedConnections()
+    {
+        return dedicatedConnections_;
+    }
+
+    @Override
+    public long getMaxConnections()
+    {
+        return maxConnections_;
+    }
+
+    @Override
+    public long getCreatedConnections()
+    {
+        return createdConnections_.get();
+    }
+
+    @Override
+    public long getReusedConnections()
+    {
+        return reusedConnections_.get();
+    }
+
+    @Override
+    public long getClosedIdleConnections()
+    {
+        return closedIdleConnections_.get();
+    }
+
+    @Override
+    public long getFailedValidations()
+    {
+        return failedValidations_.get();
+    }
+
+    @Override
+    public long getTimedOutRequests()
+    {
+        return timedOutRequests_.get();
+    }
+
+    @Override
+    public long getTimedOutTasks()
+    {
+        return timedOutTasks_.get();
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        return requests_.get();
+    }
+
+    @Override
+    public long getAverageWaitTimeInMicroseconds()
+    {
+        long requests = requests_.get();
+        return (requests == 0) ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitTimeInNanos_.get() / requests);
+    }
+
+    @Override
+    public long getMaxWaitTimeInMicroseconds()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitTimeInNanos_.get());
+    }
+
+    private PooledConnection borrow(IRODSAccount _acct, long _timeoutInMillis) throws IOException
+    {
+        long start = System.nanoTime();
+        PooledConnection conn = null;
+        long deadline = System.currentTimeMillis() + maxWaitTimeInMillis_;
+
+        synchronized (this)
+        {
+            while (conn == null)
+            {
+                if (closed_)
+                {
+                    throw new IOException("iRODS connection pool is closed");
+                }
+
+                UserPool pool = getUserPool(_acct);
+                pool.lastActiveTime_ = System.currentTimeMillis();
+
+                if (!pool.idle_.isEmpty())
+                {
+                    conn = pool.idle_.pollFirst();
+                    --idleConnections_;
+                    reusedConnections_.incrementAndGet();
+                }
+                else if (pool.open_ < maxConnectionsPerUser_ &&
+                         (openConnections_ < maxConnections_ || closeLeastRecentlyUsedConnection()))
+                {
+                    conn = open(pool);
+                    prewarm(pool);
+                }
+                else
+                {
+                    waitUntil(deadline, _acct);
+                }
+            }
+        }
+
+        try
+        {
+            validate(conn, _timeoutInMillis);
+        }
+        catch (IOException e)
+        {
+            // The validation may still be waiting on iRODS.
+            synchronized (this)
+            {
+                abandon(conn);
+            }
+
+            throw e;
+        }
+
+        long waitTime = System.nanoTime() - start;
+        requests_.incrementAndGet();
+        totalWaitTimeInNanos_.addAndGet(waitTime);
+        maxWaitTimeInNanos_.accumulateAndGet(waitTime, Math::max);
+
+        return conn;
+    }
+
+    private void giveBack(PooledConnection _conn)
+    {
+        _conn.lastUsedTime_ = System.currentTimeMillis();
+
+        synchronized (this)
+        {
+            if (closed_)
+            {
+                discard(_conn);
+            }
+            else
+            {
+                // Most recently used connections are handed out first so that
+                // connections which are not needed anymore age out.
+                _conn.pool_.idle_.addFirst(_conn);
+                ++idleConnections_;
+            }
+
+            notifyAll();
+        }
+    }
+
+    // Must be called while holding the lock.
+    private void waitUntil(long _deadline, IRODSAccount _acct) throws IOException
+    {
+        long remaining = _deadline - System.currentTimeMillis();
+
+        if (remaining <= 0)
+        {
+            timedOutRequests_.incrementAndGet();
+            throw new IOException("Timed out waiting for an iRODS connection for [" + _acct.getUserName() + "]");
+        }
+
+        try
+        {
+            wait(remaining);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    // Must be called while holding the lock.
+    private UserPool getUserPool(IRODSAccount _acct)
+    {
+        return pools_.computeIfAbsent(_acct.getUserName() + "#" + _acct.getZone(), k -> new UserPool(_acct));
+    }
+
+    // Must be called while holding the lock. The session thread does not connect
+    // until its first task.
+    private PooledConnection open(UserPool _pool)
+    {
+        String threadName = name_ + "-" + _pool.acct_.getUserName() + "-" + threadCount_.incrementAndGet();
+        PooledConnection conn = new PooledConnection(new IRODSSessionThread(factory_, _pool.acct_, threadName), _pool);
+
+        ++_pool.open_;
+        ++openConnections_;
+        createdConnections_.incrementAndGet();
+
+        return conn;
+    }
+
+    // Must be called while holding the lock. Adds idle connections to "_pool"
+    // until it has the minimum number of idle connections. The new connections
+    // connect in the background.
+    private void prewarm(UserPool _pool)
+    {
+        while (_pool.idle_.size() < minIdleConnectionsPerUser_ &&
+               _pool.open_ < maxConnectionsPerUser_ &&
+               openConnections_ < maxConnections_)
+        {
+            PooledConnection conn = open(_pool);
+
+            try
+            {
+                conn.session_.submit(() -> {
+                    if (!ping(conn))
+                    {
+                        conn.suspect_ = true;
+                    }
+
+                    return null;
+                });
+            }
+            catch (IOException e)
+            {
+                conn.suspect_ = true;
+            }
+
+            conn.lastUsedTime_ = System.currentTimeMillis();
+            _pool.idle_.addLast(conn);
+            ++idleConnections_;
+        }
+    }
+
+    // Must be called while holding the lock. Frees a slot for a connection of
+    // another account.
+    private boolean closeLeastRecentlyUsedConnection()
+    {
+        UserPool lru = null;
+
+        for (UserPool pool : pools_.values())
+        {
+            if (!pool.idle_.isEmpty() &&
+                (lru == null || pool.idle_.peekLast().lastUsedTime_ < lru.idle_.peekLast().lastUsedTime_))
+            {
+                lru = pool;
+            }
+        }
+
+        if (lru == null)
+        {
+            return false;
+        }
+
+        closeIdleConnection(lru);
+
+        log_.debug("closeLeastRecentlyUsedConnection - Closed connection of [{}].", lru.acct_.getUserName());
+
+        return true;
+    }
+
+    // Must be called while holding the lock. Closes the least recently used idle
+    // connection of "_pool". Returns false if it has none.
+    private boolean closeIdleConnection(UserPool _pool)
+    {
+        PooledConnection conn = _pool.idle_.pollLast();
+
+        if (conn == null)
+        {
+            return false;
+        }
+
+        --idleConnections_;
+        discard(conn);
+
+        return true;
+    }
+
+    // Must be called while holding the lock. The connection must not be in the
+    // idle list.
+    private void discard(PooledConnection _conn)
+    {
+        --_conn.pool_.open_;
+        --openConnections_;
+        _conn.session_.close();
+    }
+
+    // Must be called while holding the lock. The connection must not be in the
+    // idle list. Like discard(), but for a connection whose session thread may
+    // still be busy, e.g. with a task that timed out. The connection keeps its
+    // slot until the session thread has finished, so hung session threads cannot
+    // pile up beyond the pool limits.
+    private void abandon(PooledConnection _conn)
+    {
+        _conn.session_.close(() -> release(_conn));
+    }
+
+    private synchronized void release(PooledConnection _conn)
+    {
+        --_conn.pool_.open_;
+        --openConnections_;
+        notifyAll();
+    }
+
+    // Runs on the session thread of a session opened by openSession().
+    private synchronized void closeSession(UserPool _pool)
+    {
+        --_pool.open_;
+        --openConnections_;
+        --dedicatedConnections_;
+        notifyAll();
+    }
+
+    // Checks a connection that has not been used for a while or whose last task
+    // failed. A broken session is dropped; Jargon reconnects on the next task.
+    private void validate(PooledConnection _conn, long _timeoutInMillis) throws IOException
+    {
+        if (!_conn.suspect_ && System.currentTimeMillis() - _conn.lastUsedTime_ <= validationIntervalInMillis_)
+        {
+            return;
+        }
+
+        if (!run(_conn, () -> ping(_conn), _timeoutInMillis))
+        {
+            failedValidations_.incrementAndGet();
+
+            log_.debug("validate - Reconnecting [{}] ...", _conn.pool_.acct_.getUserName());
+
+            run(_conn, () -> {
+                factory_.closeSessionAndEatExceptions(_conn.pool_.acct_);
+                return null;
+            }, _timeoutInMillis);
+        }
+
+        _conn.suspect_ = false;
+    }
+
+    private static <T> T run(PooledConnection _conn, Callable<T> _task, long _timeoutInMillis) throws IOException
+    {
+        return (_timeoutInMillis > 0)
+            ? IRODSSessionThread.await(_conn.session_.submit(_task), _timeoutInMillis)
+            : _conn.session_.call(_task);
+    }
+
+    // Runs on the session thread of "_conn".
+    private boolean ping(PooledConnection _conn)
+    {
+        try
+        {
+            factory_.getEnvironmentalInfoAO(_conn.pool_.acct_).getIRODSServerCurrentTime();
+            return true;
+        }
+        catch (Exception e)
+        {
+            log_.debug("ping - Connection of [{}] is not usable: {}", _conn.pool_.acct_.getUserName(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void closeIdleConnections()
+    {
+        try
+        {
+            List<PooledConnection> closed = new ArrayList<>();
+
+            synchronized (this)
+            {
+                long now = System.currentTimeMillis();
+
+                for (Iterator<UserPool> it = pools_.values().iterator(); it.hasNext();)
+                {
+                    UserPool pool = it.next();
+                    boolean active = now - pool.lastActiveTime_ <= idleTimeoutInMillis_;
+                    int minIdle = active ? minIdleConnectionsPerUser_ : 0;
+
+                    while (pool.idle_.size() > minIdle &&
+                           now - pool.idle_.peekLast().lastUsedTime_ > idleTimeoutInMillis_)
+                    {
+                        PooledConnection conn = pool.idle_.pollLast();
+                        --idleConnections_;
+                        discard(conn);
+                        closed.add(conn);
+                    }
+
+                    if (pool.open_ == 0)
+                    {
+                        it.remove();
+                    }
+                    else if (active)
+                    {
+                        prewarm(pool);
+                    }
+                }
+
+                if (!closed.isEmpty())
+                {
+                    notifyAll();
+                }
+            }
+
+            if (!closed.isEmpty())
+            {
+                log_.debug("closeIdleConnections - Closed [{}] idle connections.", closed.size());
+                closedIdleConnections_.addAndGet(closed.size());
+            }
+        }
+        catch (Exception e)
+        {
+            log_.error(e.getMessage());
+        }
+    }
+
+    private static final class UserPool
+    {
+        final IRODSAccount acct_;
+        final Deque<PooledConnection> idle_ = new ArrayDeque<>(); // Most recently used first.
+        int open_;
+        long lastActiveTime_;
+
+        UserPool(IRODSAccount _acct)
+        {
+            acct_ = _acct;
+        }
+    }
+
+    private static final class PooledConnection
+    {
+        final IRODSSessionThread session_;
+        final UserPool pool_;
+        volatile long lastUsedTime_;
+        volatile boolean suspect_;
+
+        PooledConnection(IRODSSessionThread _session, UserPool _pool)
+        {
+            session_ = _session;
+            pool_ = _pool;
+            lastUsedTime_ = System.currentTimeMillis();
+        }
+    }
+}
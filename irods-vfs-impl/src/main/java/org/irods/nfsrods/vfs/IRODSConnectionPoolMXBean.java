@@ -0,0 +1,30 @@
+package org.irods.nfsrods.vfs;
+
+public interface IRODSConnectionPoolMXBean
+{
+    long getOpenConnections();
+
+    long getIdleConnections();
+
+    long getDedicatedConnections();
+
+    long getMaxConnections();
+
+    long getCreatedConnections();
+
+    long getReusedConnections();
+
+    long getClosedIdleConnections();
+
+    long getFailedValidations();
+
+    long getTimedOutRequests();
+
+    long getTimedOutTasks();
+
+    long getRequestCount();
+
+    long getAverageWaitTimeInMicroseconds();
+
+    long getMaxWaitTimeInMicroseconds();
+}
@@ -0,0 +1,197 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Jargon binds iRODS connections to the thread that opened them. Anything that
+// must outlive a single NFS request (e.g. an open data object) must therefore
+// always be accessed from the same thread. This class owns such a thread along
+// with the iRODS session for one account.
+class IRODSSessionThread
+{
+    private static final Logger log_ = LoggerFactory.getLogger(IRODSSessionThread.class);
+
+    private final IRODSAccessObjectFactory factory_;
+    private final IRODSAccount acct_;
+    private final ExecutorService executor_;
+    private final Runnable onClosed_;
+    private final AtomicBoolean closed_;
+
+    IRODSSessionThread(IRODSAccessObjectFactory _factory, IRODSAccount _acct, String _threadName)
+    {
+        this(_factory, _acct, _threadName, () -> {});
+    }
+
+    // "_onClosed" is run once, on the session thread, after the session has been
+    // closed by the first call to close().
+    IRODSSessionThread(IRODSAccessObjectFactory _factory, IRODSAccount _acct, String _threadName, Runnable _onClosed)
+    {
+        factory_ = _factory;
+        acct_ = _acct;
+        onClosed_ = _onClosed;
+        closed_ = new AtomicBoolean();
+        executor_ = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, _threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    IRODSAccount getAccount()
+    {
+        return acct_;
+    }
+
+    <T> Future<T> submit(Callable<T> _task) throws IOException
+    {
+        try
+        {
+            return executor_.submit(_task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            throw new ClosedSessionException();
+        }
+    }
+
+    <T> T call(Callable<T> _task) throws IOException
+    {
+        return await(submit(_task));
+    }
+
+    static <T> T await(Future<T> _future) throws IOException
+    {
+        try
+        {
+            return _future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Like await(), but gives up after "_timeoutInMillis". The task keeps
+    // running on the session thread.
+    static <T> T await(Future<T> _future, long _timeoutInMillis) throws IOException
+    {
+        try
+        {
+            _future.get(_timeoutInMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            throw new TimedOutException(_timeoutInMillis);
+        }
+        catch (InterruptedException | ExecutionException e)
+        {
+            // Reported by await() below.
+        }
+
+        return await(_future);
+    }
+
+    boolean isClosed()
+    {
+        return executor_.isShutdown();
+    }
+
+    void close()
+    {
+        close(() -> {});
+    }
+
+    // Like close(), but runs "_onClosed" on the session thread once the session
+    // is closed, i.e. after the tasks that are still queued or running. It is run
+    // by the caller if the session was already closed.
+    void close(Runnable _onClosed)
+    {
+        boolean first = closed_.compareAndSet(false, true);
+
+        try
+        {
+            executor_.submit(() -> {
+                factory_.closeSessionAndEatExceptions(acct_);
+                _onClosed.run();
+
+                if (first)
+                {
+                    onClosed_.run();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Already closed.
+            _onClosed.run();
+
+            if (first)
+            {
+                onClosed_.run();
+            }
+        }
+
+        executor_.shutdown();
+    }
+
+    void awaitClose(long _timeoutInMillis)
+    {
+        try
+        {
+            if (!executor_.awaitTermination(_timeoutInMillis, TimeUnit.MILLISECONDS))
+            {
+                log_.warn("awaitClose - Timed out waiting for session of [{}] to close.", acct_.getUserName());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Thrown when work is submitted after the session has been closed.
+    // Callers are expected to retry with a new session.
+    static final class ClosedSessionException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ClosedSessionException()
+        {
+            super("iRODS session is closed");
+        }
+    }
+
+    // Thrown when a task does not finish in time.
+    static final class TimedOutException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        TimedOutException(long _timeoutInMillis)
+        {
+            super("iRODS request did not finish within " + _timeoutInMillis + " ms");
+        }
+    }
+}
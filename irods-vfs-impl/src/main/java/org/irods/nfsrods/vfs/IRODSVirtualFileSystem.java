@@ -28,13 +28,25 @@ import static org.dcache.nfs.v4.xdr.nfs4_prot.ACE4_WRITE_NAMED_ATTRS;
 import static org.dcache.nfs.v4.xdr.nfs4_prot.ACE4_WRITE_OWNER;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.AccessController;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.cache.Cache;
@@ -46,7 +58,9 @@ import javax.security.auth.Subject;
 
 import org.dcache.auth.Subjects;
 import org.dcache.nfs.ChimeraNFSException;
+import org.dcache.nfs.status.BadCookieException;
 import org.dcache.nfs.status.NoEntException;
+import org.dcache.nfs.status.StaleException;
 import org.dcache.nfs.v4.NfsIdMapping;
 import org.dcache.nfs.v4.xdr.aceflag4;
 import org.dcache.nfs.v4.xdr.acemask4;
@@ -64,6 +78,7 @@ import org.dcache.nfs.vfs.Stat.Type;
 import org.dcache.nfs.vfs.VirtualFileSystem;
 import org.irods.jargon.core.connection.IRODSAccount;
 import org.irods.jargon.core.exception.DataNotFoundException;
+import org.irods.jargon.core.exception.FileNotFoundException;
 import org.irods.jargon.core.exception.JargonException;
 import org.irods.jargon.core.protovalues.FilePermissionEnum;
 import org.irods.jargon.core.protovalues.UserTypeEnum;
@@ -72,21 +87,31 @@ import org.irods.jargon.core.pub.CollectionAndDataObjectListAndSearchAO;
 import org.irods.jargon.core.pub.DataObjectAO;
 import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
 import org.irods.jargon.core.pub.IRODSFileSystemAO;
-import org.irods.jargon.core.pub.UserAO;
-import org.irods.jargon.core.pub.UserGroupAO;
 import org.irods.jargon.core.pub.domain.ObjStat;
 import org.irods.jargon.core.pub.domain.User;
 import org.irods.jargon.core.pub.domain.UserFilePermission;
 import org.irods.jargon.core.pub.domain.UserGroup;
-import org.irods.jargon.core.pub.io.FileIOOperations;
 import org.irods.jargon.core.pub.io.IRODSFile;
 import org.irods.jargon.core.pub.io.IRODSFileFactory;
-import org.irods.jargon.core.pub.io.IRODSRandomAccessFile;
 import org.irods.jargon.core.query.CollectionAndDataObjectListingEntry;
 import org.irods.jargon.core.query.CollectionAndDataObjectListingEntry.ObjectType;
+import org.irods.jargon.core.query.IRODSGenQueryBuilder;
+import org.irods.jargon.core.query.IRODSGenQueryFromBuilder;
+import org.irods.jargon.core.query.IRODSQueryResultRow;
+import org.irods.jargon.core.query.IRODSQueryResultSet;
+import org.irods.jargon.core.query.QueryConditionOperators;
+import org.irods.jargon.core.query.RodsGenQueryEnum;
+import org.irods.jargon.core.utils.IRODSDataConversionUtil;
+import org.irods.nfsrods.config.BlockCacheConfig;
+import org.irods.nfsrods.config.DiskCacheConfig;
 import org.irods.nfsrods.config.IRODSClientConfig;
 import org.irods.nfsrods.config.IRODSProxyAdminAccountConfig;
+import org.irods.nfsrods.config.MetadataConnectionPoolConfig;
+import org.irods.nfsrods.config.NFSServerConfig;
+import org.irods.nfsrods.config.ReaddirConfig;
 import org.irods.nfsrods.config.ServerConfig;
+import org.irods.nfsrods.config.StatBatchingConfig;
+import org.irods.nfsrods.utils.JMXUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -99,13 +124,44 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     private static final long FIXED_TIMESTAMP = System.currentTimeMillis();
     private static final FsStat FILE_SYSTEM_STAT_INFO = new FsStat(0, 0, 0, 0);
 
+    // Modification times in milliseconds fit into 42 bits until the year 2109.
+    private static final int CHANGE_ATTRIBUTE_TIME_BITS = 42;
+    private static final long CHANGE_ATTRIBUTE_TIME_MASK = (1L << CHANGE_ATTRIBUTE_TIME_BITS) - 1;
+
+    // Marks file ids derived from local inode numbers rather than object ids.
+    private static final long LOCAL_FILE_ID_FLAG = 1L << 62;
+
+    // READDIR cookies encode the position within the listing of a collection. The
+    // upper bits hold the listing phase (collections first, then data objects) and
+    // the lower bits hold the query offset of the entry following the cookie. The
+    // offset is shifted past the cookie values reserved by NFS (0, 1 and 2).
+    private static final int LISTING_PHASE_SHIFT = 48;
+    private static final long LISTING_OFFSET_MASK = (1L << LISTING_PHASE_SHIFT) - 1;
+    private static final long LISTING_RESERVED_COOKIES = 2;
+    private static final int COLLECTIONS_PHASE = 0;
+    private static final int DATA_OBJECTS_PHASE = 1;
+
+    // Rows fetched per requested path by a batched stat query. Leaves room for
+    // replicas.
+    private static final int STAT_BATCH_ROWS_PER_PATH = 4;
+
     private final IRODSAccessObjectFactory factory_;
     private final IRODSIdMapper idMapper_;
     private final InodeToPathMapper inodeToPathMapper_;
+    private final OpenFileTable openFileTable_;
+    private final IRODSConnectionPool userConnections_;
+    private final IRODSConnectionPool metadataConnections_; // Proxy admin account only.
+    private final long queryTimeoutInMillis_;
+    private final BlockCache blockCache_;
+    private final int readdirPageSize_;
+    private final ListingCache listingCache_;
     private final IRODSAccount adminAcct_;
+    private final String zone_;
+    private final long instanceId_; // Identifies this server process in file handles.
 
     private final MutableConfiguration<String, Stat> statObjectCacheConfig_; // Key: <username>_<path>
     private final Cache<String, Stat> statObjectCache_;                      // Key: <username>_<path>
+    private final Set<String> statObjectCacheUsers_; // The users that may have entries in "statObjectCache_".
 
     private final MutableConfiguration<String, Access> accessCacheConfig_; // Key: <user_id>#<access_mask>#<path>
     private final Cache<String, Access> accessCache_;                      // Key: <user_id>#<access_mask>#<path>
@@ -113,6 +169,25 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     private final MutableConfiguration<String, ObjectType> objectTypeCacheConfig_; // Key: <path>
     private final Cache<String, ObjectType> objectTypeCache_;                      // Key: <path>
 
+    // ACLs are shared by all users and are filled in bulk by collection listings.
+    private final MutableConfiguration<String, List<UserFilePermission>> permissionsCacheConfig_; // Key: <path>
+    private final Cache<String, List<UserFilePermission>> permissionsCache_;                      // Key: <path>
+
+    // Names known not to exist within a collection.
+    private final MutableConfiguration<String, Boolean> missingEntryCacheConfig_; // Key: <parent_inode>#<name>
+    private final Cache<String, Boolean> missingEntryCache_;                      // Key: <parent_inode>#<name>
+
+    // Identical catalog queries issued concurrently (e.g. many clients stating the
+    // same file) are sent to iRODS once and share the result.
+    private final SingleFlight<String, ObjStat> objStatFlights_;                     // Key: <path>
+    private final SingleFlight<String, List<UserFilePermission>> permissionFlights_; // Key: <path>
+    private final SingleFlight<String, Set<String>> groupFlights_;                  // Key: <username>
+
+    // Stat queries for different paths arriving close together are resolved with
+    // a single catalog query. Null if batching is disabled.
+    private final MicroBatcher<String, ObjStat> statBatcher_; // Key: <path>
+    private final int statBatchRowLimit_;
+
     // Special paths within iRODS.
     private final Path ROOT_COLLECTION;
     private final Path ZONE_COLLECTION;
@@ -150,8 +225,53 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         factory_ = _factory;
         idMapper_ = _idMapper;
         inodeToPathMapper_ = new InodeToPathMapper(_config, _factory);
+        JMXUtils.registerMXBean(inodeToPathMapper_, "InodeMap");
+        NFSServerConfig nfsSvrConfig = _config.getNfsServerConfig();
+        BufferPool bufferPool = new BufferPool(nfsSvrConfig.getBufferPoolConfig());
+        JMXUtils.registerMXBean(bufferPool, "BufferPool");
+        userConnections_ = new IRODSConnectionPool(_factory, nfsSvrConfig.getConnectionPoolConfig(), "irods-connection");
+        JMXUtils.registerMXBean(userConnections_, "ConnectionPool");
+        openFileTable_ = new OpenFileTable(_factory, userConnections_, nfsSvrConfig, bufferPool);
+        MetadataConnectionPoolConfig metadataPoolConfig = nfsSvrConfig.getMetadataConnectionPoolConfig();
+        metadataConnections_ = new IRODSConnectionPool(_factory, metadataPoolConfig, "irods-metadata-connection");
+        JMXUtils.registerMXBean(metadataConnections_, "MetadataConnectionPool");
+        queryTimeoutInMillis_ = metadataPoolConfig.getQueryTimeoutInMilliseconds();
+        objStatFlights_ = new SingleFlight<>();
+        JMXUtils.registerMXBean(objStatFlights_, "StatCoalescing");
+        permissionFlights_ = new SingleFlight<>();
+        JMXUtils.registerMXBean(permissionFlights_, "PermissionCoalescing");
+        groupFlights_ = new SingleFlight<>();
+        JMXUtils.registerMXBean(groupFlights_, "GroupCoalescing");
+        StatBatchingConfig statBatchingConfig = nfsSvrConfig.getStatBatchingConfig();
+        statBatcher_ = statBatchingConfig.isEnabled()
+            ? new MicroBatcher<>(statBatchingConfig, this::statCatalogObjects) : null;
+        statBatchRowLimit_ = STAT_BATCH_ROWS_PER_PATH * statBatchingConfig.getMaxBatchSize();
+
+        if (statBatcher_ != null)
+        {
+            JMXUtils.registerMXBean(statBatcher_, "StatBatching");
+        }
+        readdirPageSize_ = nfsSvrConfig.getReaddirConfig().getPageSize();
+        listingCache_ = new ListingCache(nfsSvrConfig.getReaddirConfig());
+        JMXUtils.registerMXBean(listingCache_, "ListingCache");
+        BlockCacheConfig blockCacheConfig = nfsSvrConfig.getBlockCacheConfig();
+        blockCache_ = blockCacheConfig.isEnabled()
+            ? new BlockCache(blockCacheConfig, createDiskCache(nfsSvrConfig), bufferPool) : null;
+
+        if (blockCache_ != null)
+        {
+            JMXUtils.registerMXBean(blockCache_, "BlockCache");
+        }
 
         IRODSClientConfig rodsSvrConfig = _config.getIRODSClientConfig();
+        zone_ = rodsSvrConfig.getZone();
+
+        if (zone_.getBytes(StandardCharsets.UTF_8).length > FileHandle.MAX_ZONE_SIZE)
+        {
+            throw new IllegalArgumentException("Zone name too long for file handles");
+        }
+
+        instanceId_ = makeInstanceId();
 
         ROOT_COLLECTION = Paths.get("/");
         ZONE_COLLECTION = ROOT_COLLECTION.resolve(rodsSvrConfig.getZone());
@@ -181,6 +301,16 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         // @formatter:on
 
         statObjectCache_ = _cacheManager.createCache("stat_info_cache", statObjectCacheConfig_);
+        statObjectCacheUsers_ = ConcurrentHashMap.newKeySet();
+
+        // @formatter:off
+        missingEntryCacheConfig_ = new MutableConfiguration<String, Boolean>()
+            .setTypes(String.class, Boolean.class)
+            .setStoreByValue(false)
+            .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, time)));
+        // @formatter:on
+
+        missingEntryCache_ = _cacheManager.createCache("missing_entry_cache", missingEntryCacheConfig_);
 
         time = _config.getNfsServerConfig().getUserAccessRefreshTimeInMilliseconds();
 
@@ -193,6 +323,14 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
         accessCache_ = _cacheManager.createCache("access_cache", accessCacheConfig_);
 
+        // @formatter:off
+        permissionsCacheConfig_ = new MutableConfiguration<String, List<UserFilePermission>>()
+            .setStoreByValue(false)
+            .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, time)));
+        // @formatter:on
+
+        permissionsCache_ = _cacheManager.createCache("permissions_cache", permissionsCacheConfig_);
+
         // @formatter:off
         objectTypeCacheConfig_ = new MutableConfiguration<String, ObjectType>()
             .setTypes(String.class, ObjectType.class)
@@ -203,12 +341,59 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         objectTypeCache_ = _cacheManager.createCache("object_type_cache", objectTypeCacheConfig_);
     }
 
+    // Closes all data objects held open across requests so that iRODS can
+    // finalize them (e.g. update sizes in the catalog), along with the pooled
+    // iRODS connections.
+    public void close()
+    {
+        openFileTable_.closeAll();
+        userConnections_.close();
+        metadataConnections_.close();
+
+        if (blockCache_ != null)
+        {
+            blockCache_.close();
+        }
+    }
+
+    // The disk cache is optional, so a cache directory that cannot be used
+    // only disables it.
+    private static DiskBlockCache createDiskCache(NFSServerConfig _config)
+    {
+        DiskCacheConfig diskCacheConfig = _config.getDiskCacheConfig();
+
+        if (!diskCacheConfig.isEnabled())
+        {
+            return null;
+        }
+
+        if (!_config.getBlockCacheConfig().isEnabled())
+        {
+            log_.warn("createDiskCache - Ignoring disk cache because the block cache is disabled.");
+            return null;
+        }
+
+        try
+        {
+            int blockSize = _config.getBlockCacheConfig().getBlockSize();
+            DiskBlockCache diskCache = new DiskBlockCache(diskCacheConfig, blockSize);
+            JMXUtils.registerMXBean(diskCache, "DiskBlockCache");
+            return diskCache;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log_.error("createDiskCache - Disk cache disabled: {}", e.getMessage());
+        }
+
+        return null;
+    }
+
     @Override
     public int access(Inode _inode, int _mode) throws IOException
     {
         log_.debug("vfs::access");
 
-        Path path = getPath(toInodeNumber(_inode));
+        Path path = getPath(_inode);
 
         log_.debug("access - _inode path  = {}", path);
         log_.debug("access - _mode        = {}", _mode);
@@ -225,7 +410,17 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     @Override
     public void commit(Inode _inode, long _offset, int _count) throws IOException
     {
-        // NOP
+        log_.debug("vfs::commit");
+
+        try
+        {
+            openFileTable_.commit(toInodeNumber(_inode));
+        }
+        catch (IOException e)
+        {
+            log_.error(e.getMessage());
+            throw e;
+        }
     }
 
     @Override
@@ -238,7 +433,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             throw new IllegalArgumentException("Invalid file type [" + _type + "]");
         }
 
-        Path parentPath = getPath(toInodeNumber(_parent));
+        Path parentPath = getPath(_parent);
         String path = parentPath.resolve(_name).toString();
 
         log_.debug("create - _parent      = {}", parentPath);
@@ -252,39 +447,45 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         try
         {
             IRODSAccount acct = idMapper_.resolveUser((int) Subjects.getUid(_subject)).getAccount();
-            IRODSFileFactory ff = factory_.getIRODSFileFactory(acct);
-            IRODSFile newFile = ff.instanceIRODSFile(path);
 
-            log_.debug("create - Creating new file [{}] ...", newFile);
+            userConnections_.call(acct, () -> {
+                IRODSFile newFile = factory_.getIRODSFileFactory(acct).instanceIRODSFile(path);
 
-            try (AutoClosedIRODSFile ac = new AutoClosedIRODSFile(newFile))
-            {
-                if (!newFile.createNewFile())
+                log_.debug("create - Creating new file [{}] ...", newFile);
+
+                try (AutoClosedIRODSFile ac = new AutoClosedIRODSFile(newFile))
                 {
-                    throw new IOException("Failed to create new file in iRODS");
+                    if (!newFile.createNewFile())
+                    {
+                        throw new IOException("Failed to create new file in iRODS");
+                    }
                 }
-            }
-            
-            long newInodeNumber = inodeToPathMapper_.getAndIncrementFileID();
-            inodeToPathMapper_.map(newInodeNumber, path);
+
+                return null;
+            });
+
+            missingEntryCache_.remove(makeMissingEntryKey(toInodeNumber(_parent), _name));
+
+            long newInodeNumber = mapNewObject(Paths.get(path), acct.getUserName());
+            openFileTable_.markCreated(newInodeNumber);
 
             return toFh(newInodeNumber);
         }
-        catch (JargonException e)
+        catch (IOException e)
         {
             log_.error(e.getMessage());
-            throw new IOException(e);
-        }
-        finally
-        {
-            closeCurrentConnection();
+            throw e;
         }
     }
 
     @Override
     public byte[] directoryVerifier(Inode _inode) throws IOException
     {
-        return DirectoryStream.ZERO_VERIFIER;
+        log_.debug("vfs::directoryVerifier");
+
+        long inodeNumber = toInodeNumber(_inode);
+
+        return collectionVerifier(getPath(_inode), inodeNumber);
     }
     
     @Override
@@ -292,7 +493,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     {
         log_.debug("vfs::getAcl");
 
-        String path = getPath(toInodeNumber(_inode)).toString();
+        String path = getPath(_inode).toString();
 
         log_.debug("getAcl - _inode path = {}", path);
 
@@ -341,10 +542,6 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             log_.error(e.getMessage());
             throw new IOException(e);
         }
-        finally
-        {
-            closeCurrentConnection();
-        }
 
         return acl.toArray(new nfsace4[0]);
     }
@@ -364,8 +561,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             return null;
         }
         
-        UserAO uao = factory_.getUserAO(adminAcct_);
-        User user = uao.findByName(who);
+        User user = findUser(who);
 
         if (user == null)
         {
@@ -533,7 +729,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             return;
         }
 
-        String path = getPath(toInodeNumber(_inode)).toString();
+        String path = getPath(_inode).toString();
 
         log_.debug("setAcl - _inode path = {}", path);
         log_.debug("setAcl - _acl length = {}", _acl.length);
@@ -587,7 +783,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         }
         finally
         {
-            closeCurrentConnection();
+            permissionsCache_.remove(path);
         }
     }
 
@@ -608,7 +804,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             return Access.DENY;
         }
 
-        String path = getPath(toInodeNumber(_inode)).toString();
+        String path = getPath(_inode).toString();
         
         // Key   (String) => <user_id>#<access_mask>#<path>
         // Value (Access) => ALLOW/DENY
@@ -660,9 +856,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         try
         {
             {
-                UserAO uao = factory_.getUserAO(adminAcct_);
-
-                if (uao.findByName(userName).getUserType() == UserTypeEnum.RODS_ADMIN)
+                if (findUser(userName).getUserType() == UserTypeEnum.RODS_ADMIN)
                 {
                     log_.debug("checkAcl - User is an iRODS administrator, access allowed.");
                     accessCache_.put(cachedAccessKey, Access.ALLOW);
@@ -722,10 +916,6 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             log_.error(e.getMessage());
             throw new IOException(e);
         }
-        finally
-        {
-            closeCurrentConnection();
-        }
 
         accessCache_.put(cachedAccessKey, Access.DENY);
 
@@ -753,7 +943,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     @Override
     public Inode getRootInode() throws IOException
     {
-        return toFh(1);
+        return toFh(InodeToPathMapper.ROOT_INODE_NUMBER);
     }
 
     @Override
@@ -762,16 +952,9 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         log_.debug("vfs::getattr");
 
         long inodeNumber = toInodeNumber(_inode);
-        Path path = getPath(inodeNumber);
+        Path path = getPath(_inode);
 
-        try
-        {
-            return statPath(path, inodeNumber);
-        }
-        finally
-        {
-            closeCurrentConnection();
-        }
+        return statPath(path, inodeNumber);
     }
 
     @Override
@@ -790,55 +973,96 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     public DirectoryStream list(Inode _inode, byte[] _verifier, long _cookie) throws IOException
     {
         log_.debug("vfs::list");
+        log_.debug("list - _cookie = {}", _cookie);
+
+        int phase = listingPhase(_cookie);
+        long offset = listingOffset(_cookie);
+
+        if (_cookie != 0 && (phase > DATA_OBJECTS_PHASE || offset < 0 || offset > Integer.MAX_VALUE))
+        {
+            throw new BadCookieException("Invalid cookie: " + _cookie);
+        }
 
         List<DirectoryEntry> list = new ArrayList<>();
+        byte[] verifier;
+        ListingCache.Page page;
 
         try
         {
-            IRODSAccount acct = getCurrentIRODSUser().getAccount();
-            CollectionAndDataObjectListAndSearchAO lao = factory_.getCollectionAndDataObjectListAndSearchAO(acct);
-            Path parentPath = getPath(toInodeNumber(_inode));
+            long parentInodeNumber = toInodeNumber(_inode);
+            Path parentPath = getPath(_inode);
 
             log_.debug("list - Listing contents of [{}] ...", parentPath);
 
+            // Cookies only carry a position within the listing. If the collection was
+            // modified since the client started reading it, entries may be skipped or
+            // returned twice, which is the same as reading a directory being modified
+            // on a local file system. The listing continues rather than forcing the
+            // client to start over.
+            verifier = collectionVerifier(parentPath, parentInodeNumber);
+
+            if (_cookie != 0 && !Arrays.equals(_verifier, DirectoryStream.ZERO_VERIFIER) &&
+                !Arrays.equals(_verifier, verifier))
+            {
+                log_.debug("list - Collection [{}] changed since the listing started.", parentPath);
+            }
+
+            IRODSAccount acct = getCurrentIRODSUser().getAccount();
             String irodsAbsPath = parentPath.normalize().toString();
+            String listingKey = acct.getUserName() + "#" + parentInodeNumber + "#" + Longs.fromByteArray(verifier);
 
-            List<CollectionAndDataObjectListingEntry> entries;
-            entries = lao.listDataObjectsAndCollectionsUnderPath(irodsAbsPath);
+            // A reply only holds part of the entries returned, so continuations are
+            // served from the page materialized by the previous request. A listing
+            // starting over is always fetched again so that it reflects the current
+            // state of its entries.
+            ListingCache.Page cached = (_cookie != 0) ? listingCache_.get(listingKey, _cookie) : null;
 
-            for (CollectionAndDataObjectListingEntry dataObj : entries)
+            if (cached != null)
             {
-                Path filePath = parentPath.resolve(dataObj.getPathOrName());
-                log_.debug("list - Entry = {}", filePath);
+                List<DirectoryEntry> rest = cached.getEntriesAfter(_cookie);
 
-                long inodeNumber;
-
-                if (inodeToPathMapper_.getInodeToPathMap().containsValue(filePath))
+                if (cached.isComplete() || rest.size() >= ReaddirConfig.MIN_PAGE_SIZE)
                 {
-                    inodeNumber = getInodeNumber(filePath);
+                    log_.debug("list - Returning cached listing of [{}].", parentPath);
+                    return cached.getStream();
                 }
-                else
+
+                // Too few entries are left for a full reply. The rest of the page is
+                // kept and the listing continues where the page ended.
+                list.addAll(rest);
+                phase = listingPhase(cached.getNextCookie());
+                offset = listingOffset(cached.getNextCookie());
+            }
+
+            // The listing carries everything needed to build the stat information
+            // of its entries, including their permissions. Only the groups of the
+            // user have to be looked up, once for the whole listing.
+            Set<String> groups = getGroupNames(acct.getUserName());
+
+            while (phase <= DATA_OBJECTS_PHASE && list.size() < readdirPageSize_)
+            {
+                offset = listPage(acct, irodsAbsPath, parentPath, phase, (int) offset, groups, list);
+
+                if (offset < 0)
                 {
-                    inodeNumber = inodeToPathMapper_.getAndIncrementFileID();
-                    inodeToPathMapper_.map(inodeNumber, filePath);
+                    ++phase;
+                    offset = 0;
                 }
-
-                Stat stat = statPath(filePath, inodeNumber);
-                Inode inode = toFh(inodeNumber);
-                list.add(new DirectoryEntry(filePath.getFileName().toString(), inode, stat, inodeNumber));
             }
+
+            long nextCookie = (phase <= DATA_OBJECTS_PHASE) ? makeListingCookie(phase, offset) : -1;
+            page = new ListingCache.Page(verifier, _cookie, list, nextCookie);
+            listingCache_.put(listingKey, page);
         }
         catch (JargonException e)
         {
             log_.error(e.getMessage());
             throw new IOException(e);
         }
-        finally
-        {
-            closeCurrentConnection();
-        }
 
-        return new DirectoryStream(DirectoryStream.ZERO_VERIFIER, list);
+        log_.debug("list - Returning {} entries.", list.size());
+
+        return page.getStream();
     }
 
     @Override
@@ -846,62 +1070,91 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     {
         log_.debug("vfs::lookup");
 
-        Path parentPath = getPath(toInodeNumber(_parent));
+        long parentInodeNumber = toInodeNumber(_parent);
+        Path parentPath = getPath(_parent);
         Path targetPath = parentPath.resolve(_path);
 
         log_.debug("lookup - _path   = {}", _path);
         log_.debug("lookup - _parent = {}", parentPath);
         log_.debug("lookup - Looking up [{}] ...", targetPath);
 
-        try
+        // Build tools, interpreters and shells probe for many names that do not
+        // exist. Answer repeated probes without querying iRODS.
+        final String missingEntryKey = makeMissingEntryKey(parentInodeNumber, _path);
+
+        if (missingEntryCache_.containsKey(missingEntryKey))
+        {
+            log_.debug("lookup - [{}] is known not to exist.", targetPath);
+            throw new NoEntException("Path does not exist");
+        }
+
+        String userName = getCurrentIRODSUser().getAccount().getUserName();
+
+        // A mapped path with fresh stat information is known to exist. The client
+        // usually follows up with a GETATTR, which is answered from the same cache.
+        Long mappedInodeNumber = inodeToPathMapper_.getInodeNumber(targetPath);
+
+        if (mappedInodeNumber != null && statObjectCache_.containsKey(userName + "_" + targetPath))
         {
-            CollectionAndDataObjectListAndSearchAO lao = null;
-            lao = factory_.getCollectionAndDataObjectListAndSearchAO(adminAcct_);
-            boolean isTargetValid = false;
+            log_.debug("lookup - Returning mapped inode for [{}] ...", targetPath);
+            return toFh(mappedInodeNumber);
+        }
 
-            try
-            {
-                isTargetValid = (lao.retrieveObjectStatForPath(targetPath.toString()) != null);
-            }
-            catch (Exception e)
+        ObjStat objStat = null;
+
+        try
+        {
+            // Paths that are not mapped yet are often probes for names that do
+            // not exist.
+            objStat = statCatalogObject(targetPath.toString(), mappedInodeNumber != null);
+        }
+        catch (FileNotFoundException e)
+        {
+            missingEntryCache_.put(missingEntryKey, Boolean.TRUE);
+        }
+        catch (Exception e)
+        {
+            // A query that could not be answered (e.g. it timed out) must not be
+            // mistaken for a missing entry.
+            if (e.getCause() instanceof IOException)
             {
+                log_.error(e.getMessage());
+                throw new IOException(e);
             }
+        }
 
-            // If the target path is valid, then return an inode object created from
-            // the user's mapped paths. Else, create a new mapping and return an
-            // inode object for the new mapping.
-            if (isTargetValid)
-            {
-                if (inodeToPathMapper_.getPathToInodeMap().containsKey(targetPath))
-                {
-                    return toFh(getInodeNumber(targetPath));
-                }
+        // If the target path is valid, then return an inode object created from
+        // the user's mapped paths. Else, create a new mapping and return an
+        // inode object for the new mapping.
+        if (objStat != null)
+        {
+            long objectId = objStat.getDataId();
+            long inodeNumber = updateInodeMap(() -> inodeToPathMapper_.getOrAssign(targetPath, objectId));
 
-                long newInodeNumber = inodeToPathMapper_.getAndIncrementFileID();
-                inodeToPathMapper_.map(newInodeNumber, targetPath);
-                return toFh(newInodeNumber);
+            // Keep the stat information so that the GETATTR following the
+            // lookup does not query iRODS again.
+            try
+            {
+                statObjStat(objStat, targetPath.toString(), inodeNumber, userName);
             }
-
-            // If the target path is not registered in iRODS and NFSRODS has previously
-            // mapped it, then unmap it. This keeps NFSRODS in sync with iRODS.
-            if (inodeToPathMapper_.getPathToInodeMap().containsKey(targetPath))
+            catch (NumberFormatException | JargonException e)
             {
-                inodeToPathMapper_.unmap(getInodeNumber(targetPath), targetPath);
+                log_.debug("lookup - Could not cache stat information for [{}]: {}", targetPath, e.getMessage());
             }
 
-            // It is VERY important that this exception is thrown here.
-            // It affects how NFS4J continues processing the request.
-            throw new NoEntException("Path does not exist");
-        }
-        catch (JargonException e)
-        {
-            log_.error(e.getMessage());
-            throw new IOException(e);
+            return toFh(inodeNumber);
         }
-        finally
+
+        // If the target path is not registered in iRODS and NFSRODS has previously
+        // mapped it, then unmap it. This keeps NFSRODS in sync with iRODS.
+        if (inodeToPathMapper_.isMapped(targetPath))
         {
-            closeCurrentConnection();
+            inodeToPathMapper_.unmap(getInodeNumber(targetPath), targetPath);
         }
+
+        // It is VERY important that this exception is thrown here.
+        // It affects how NFS4J continues processing the request.
+        throw new NoEntException("Path does not exist");
     }
 
     @Override
@@ -911,27 +1164,30 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
         try
         {
-            Path parentPath = getPath(toInodeNumber(_inode));
+            long parentInodeNumber = toInodeNumber(_inode);
+            Path parentPath = getPath(_inode);
 
             IRODSAccount acct = getCurrentIRODSUser().getAccount();
-            IRODSFile file = factory_.getIRODSFileFactory(acct).instanceIRODSFile(parentPath.toString(), _path);
 
-            file.mkdir();
-            file.close();
+            String path = userConnections_.call(acct, () -> {
+                IRODSFile file = factory_.getIRODSFileFactory(acct).instanceIRODSFile(parentPath.toString(), _path);
 
-            long inodeNumber = inodeToPathMapper_.getAndIncrementFileID();
-            inodeToPathMapper_.map(inodeNumber, file.getAbsolutePath());
+                file.mkdir();
+                file.close();
+
+                return file.getAbsolutePath();
+            });
+
+            missingEntryCache_.remove(makeMissingEntryKey(parentInodeNumber, _path));
+
+            long inodeNumber = mapNewObject(Paths.get(path), acct.getUserName());
 
             return toFh(inodeNumber);
         }
-        catch (JargonException e)
+        catch (IOException e)
         {
             log_.error(e.getMessage());
-            throw new IOException(e);
-        }
-        finally
-        {
-            closeCurrentConnection();
+            throw e;
         }
     }
 
@@ -940,8 +1196,8 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     {
         log_.debug("vfs::move");
 
-        Path srcParentPath = getPath(toInodeNumber(_inode));
-        Path dstParentPath = getPath(toInodeNumber(_dest));
+        Path srcParentPath = getPath(_inode);
+        Path dstParentPath = getPath(_dest);
 
         log_.debug("move - _inode path (src) = {}", srcParentPath);
         log_.debug("move - _inode path (dst) = {}", dstParentPath);
@@ -956,56 +1212,72 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
             log_.debug("move - Source path = {}", srcPath);
 
-            IRODSFileFactory ff = factory_.getIRODSFileFactory(acct);
-            Path dstPath = null;
-
-            if (_dstName != null && !_srcName.equals(_dstName))
-            {
-                dstPath = dstParentPath.resolve(_dstName);
-            }
-            else
-            {
-                dstPath = dstParentPath.resolve(_srcName);
-            }
+            Path dstPath = (_dstName != null && !_srcName.equals(_dstName))
+                ? dstParentPath.resolve(_dstName) : dstParentPath.resolve(_srcName);
 
             log_.debug("move - Destination path = {}", dstPath);
 
-            IRODSFile srcFile = ff.instanceIRODSFile(srcPath.toString());
-            IRODSFile dstFile = ff.instanceIRODSFile(dstPath.toString());
-
-            try (AutoClosedIRODSFile ac0 = new AutoClosedIRODSFile(srcFile);
-                 AutoClosedIRODSFile ac1 = new AutoClosedIRODSFile(dstFile))
-            {
-                IRODSFileSystemAO fsao = factory_.getIRODSFileSystemAO(acct);
+            closeOpenFiles(srcPath);
+            closeOpenFiles(dstPath);
 
-                log_.debug("move - Is file? {}", srcFile.isFile());
+            userConnections_.call(acct, () -> {
+                IRODSFileFactory ff = factory_.getIRODSFileFactory(acct);
+                IRODSFile srcFile = ff.instanceIRODSFile(srcPath.toString());
+                IRODSFile dstFile = ff.instanceIRODSFile(dstPath.toString());
 
-                if (srcFile.isFile())
-                {
-                    log_.debug("move - Renaming data object from [{}] to [{}] ...", srcPath, dstPath);
-                    fsao.renameFile(srcFile, dstFile);
-                }
-                else
+                try (AutoClosedIRODSFile ac0 = new AutoClosedIRODSFile(srcFile);
+                     AutoClosedIRODSFile ac1 = new AutoClosedIRODSFile(dstFile))
                 {
-                    log_.debug("move - Renaming collection from [{}] to [{}] ...", srcPath, dstPath);
-                    fsao.renameDirectory(srcFile, dstFile);
+                    IRODSFileSystemAO fsao = factory_.getIRODSFileSystemAO(acct);
+
+                    log_.debug("move - Is file? {}", srcFile.isFile());
+
+                    if (srcFile.isFile())
+                    {
+                        log_.debug("move - Renaming data object from [{}] to [{}] ...", srcPath, dstPath);
+                        fsao.renameFile(srcFile, dstFile);
+                    }
+                    else
+                    {
+                        log_.debug("move - Renaming collection from [{}] to [{}] ...", srcPath, dstPath);
+                        fsao.renameDirectory(srcFile, dstFile);
+                    }
                 }
-            }
+
+                return null;
+            });
 
             log_.debug("move - Updating mappings between paths and inodes ...");
 
-            inodeToPathMapper_.remap(inodeToPathMapper_.getPathToInodeMap().get(srcPath), srcPath, dstPath);
+            // Descendants of a renamed collection are resolved through the inode of
+            // the collection, so only the renamed object itself is remapped. Their
+            // inodes stay valid regardless of the size of the subtree.
+            Long srcInodeNumber = inodeToPathMapper_.getInodeNumber(srcPath);
+
+            if (srcInodeNumber != null)
+            {
+                updateInodeMap(() -> {
+                    inodeToPathMapper_.remap(srcInodeNumber, srcPath, dstPath);
+                    return null;
+                });
+            }
+            else if (inodeToPathMapper_.isMapped(dstPath))
+            {
+                // The replaced destination must not keep its inode.
+                inodeToPathMapper_.unmap(getInodeNumber(dstPath), dstPath);
+            }
+            permissionsCache_.remove(srcPath.toString());
+            permissionsCache_.remove(dstPath.toString());
+            invalidateCachedStat(srcPath.toString());
+            invalidateCachedStat(dstPath.toString());
+            missingEntryCache_.remove(makeMissingEntryKey(toInodeNumber(_dest), dstPath.getFileName().toString()));
 
             return true;
         }
-        catch (JargonException e)
+        catch (IOException e)
         {
             log_.error(e.getMessage());
-            throw new IOException(e);
-        }
-        finally
-        {
-            closeCurrentConnection();
+            throw e;
         }
     }
 
@@ -1013,7 +1285,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     public Inode parentOf(Inode _inode) throws IOException
     {
         log_.debug("vfs::parentOf");
-        Path path = getPath(toInodeNumber(_inode));
+        Path path = getPath(_inode);
         return toFh(getInodeNumber(path.getParent()));
     }
 
@@ -1029,24 +1301,28 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
         try
         {
-            Path path = getPath(toInodeNumber(_inode));
-            IRODSFileFactory ff = factory_.getIRODSFileFactory(acct);
-            IRODSRandomAccessFile file = ff.instanceIRODSRandomAccessFile(path.toString());
+            long inodeNumber = toInodeNumber(_inode);
+            Path path = getPath(_inode);
 
-            try (AutoClosedIRODSRandomAccessFile ac = new AutoClosedIRODSRandomAccessFile(file))
+            // Data objects being written to are read directly because their
+            // catalog information is not updated until they are closed.
+            if (blockCache_ != null && openFileTable_.getWrittenSize(inodeNumber) < 0)
             {
-                file.seek(_offset, FileIOOperations.SeekWhenceType.SEEK_START);
-                return file.read(_data, 0, _count);
+                Stat stat = statPath(path, inodeNumber);
+                String key = BlockCache.makeKey(path.toString(), stat.getMTime(), stat.getSize());
+
+                // @formatter:off
+                return blockCache_.read(path.toString(), key, stat.getSize(), _data, _offset, _count,
+                                        (b, o, c) -> openFileTable_.read(inodeNumber, acct, path, b, o, c));
+                // @formatter:on
             }
+
+            return openFileTable_.read(inodeNumber, acct, path, _data, _offset, _count);
         }
-        catch (IOException | JargonException e)
+        catch (IOException e)
         {
             log_.error(e.getMessage());
-            throw new IOException(e);
-        }
-        finally
-        {
-            closeCurrentConnection();
+            throw e;
         }
     }
 
@@ -1065,37 +1341,41 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
         try
         {
-            Path parentPath = getPath(toInodeNumber(_parent));
+            Path parentPath = getPath(_parent);
 
             log_.debug("remove - _parent = {}", parentPath);
             log_.debug("remove - _path   = {}", _path);
 
             Path objectPath = parentPath.resolve(_path);
-            IRODSFileFactory ff = factory_.getIRODSFileFactory(acct);
-            IRODSFile file = ff.instanceIRODSFile(objectPath.toString());
+
+            closeOpenFiles(objectPath);
 
             log_.debug("remove - Removing [{}] ...", objectPath);
 
-            try (AutoClosedIRODSFile ac = new AutoClosedIRODSFile(file))
-            {
-                if (!file.delete())
+            userConnections_.call(acct, () -> {
+                IRODSFile file = factory_.getIRODSFileFactory(acct).instanceIRODSFile(objectPath.toString());
+
+                try (AutoClosedIRODSFile ac = new AutoClosedIRODSFile(file))
                 {
-                    throw new IOException("Failed to delete object in iRODS");
+                    if (!file.delete())
+                    {
+                        throw new IOException("Failed to delete object in iRODS");
+                    }
                 }
-            }
+
+                return null;
+            });
 
             inodeToPathMapper_.unmap(getInodeNumber(objectPath), objectPath);
+            permissionsCache_.remove(objectPath.toString());
+            invalidateCachedStat(objectPath.toString());
 
             log_.debug("remove - [{}] removed.", objectPath);
         }
-        catch (JargonException e)
+        catch (IOException e)
         {
             log_.error(e.getMessage());
-            throw new IOException(e);
-        }
-        finally
-        {
-            closeCurrentConnection();
+            throw e;
         }
     }
 
@@ -1103,7 +1383,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     public void setattr(Inode _inode, Stat _stat) throws IOException
     {
         log_.debug("vfs::setattr");
-        log_.debug("setattr - _inode = {}", getPath(toInodeNumber(_inode)));
+        log_.debug("setattr - _inode = {}", getPath(_inode));
         log_.debug("setattr - _stat  = {}", _stat);
 
         if (_stat.isDefined(Stat.StatAttribute.MODE))
@@ -1132,7 +1412,8 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
         try
         {
-            Path path = getPath(toInodeNumber(_inode));
+            long inodeNumber = toInodeNumber(_inode);
+            Path path = getPath(_inode);
 
             log_.debug("write - _inode path  = {}", path);
             log_.debug("write - _data.length = {}", _data.length);
@@ -1140,24 +1421,17 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             log_.debug("write - _count       = {}", _count);
 
             IRODSAccount acct = getCurrentIRODSUser().getAccount();
-            IRODSFileFactory ff = factory_.getIRODSFileFactory(acct);
-            IRODSRandomAccessFile file = ff.instanceIRODSRandomAccessFile(path.toString());
+            boolean stable = StabilityLevel.UNSTABLE != _stabilityLevel;
+            boolean buffered = openFileTable_.write(inodeNumber, acct, path, _data, _offset, _count, stable);
+            invalidateBlockCache(path);
 
-            try (AutoClosedIRODSRandomAccessFile ac = new AutoClosedIRODSRandomAccessFile(file))
-            {
-                file.seek(_offset, FileIOOperations.SeekWhenceType.SEEK_START);
-                file.write(_data, 0, _count);
-                return new WriteResult(StabilityLevel.FILE_SYNC, _count);
-            }
+            // Buffered data is made stable by COMMIT.
+            return new WriteResult(buffered ? StabilityLevel.UNSTABLE : StabilityLevel.FILE_SYNC, _count);
         }
-        catch (IOException | JargonException e)
+        catch (IOException e)
         {
             log_.error(e.getMessage());
-            throw new IOException(e);
-        }
-        finally
-        {
-            closeCurrentConnection();
+            throw e;
         }
     }
     
@@ -1171,14 +1445,33 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             return type;
         }
 
-        CollectionAndDataObjectListAndSearchAO lao = factory_.getCollectionAndDataObjectListAndSearchAO(adminAcct_);
-        ObjStat objStat = lao.retrieveObjectStatForPath(_path);
-        type = objStat.getObjectType();
+        type = statCatalogObject(_path).getObjectType();
         objectTypeCache_.put(_path, type);
 
         return type;
     }
 
+    private void cacheStat(String _userName, String _path, Stat _stat, ObjectType _objType)
+    {
+        statObjectCacheUsers_.add(_userName);
+        statObjectCache_.put(_userName + "_" + _path, _stat);
+        objectTypeCache_.put(_path, _objType);
+    }
+
+    // Drops the stat information of "_path" cached for any user. Needed whenever
+    // the path starts referring to another object (e.g. after a rename onto an
+    // existing name), since mapped paths with cached stat information are
+    // trusted by lookup().
+    private void invalidateCachedStat(String _path)
+    {
+        for (String userName : statObjectCacheUsers_)
+        {
+            statObjectCache_.remove(userName + "_" + _path);
+        }
+
+        objectTypeCache_.remove(_path);
+    }
+
     private Stat statPath(Path _path, long _inodeNumber) throws IOException
     {
         log_.debug("statPath - _inodeNumber          = {}", _inodeNumber);
@@ -1195,53 +1488,16 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         if (null != stat)
         {
             log_.debug("statPath - Returning cached stat information for [{}] ...", path);
-            return stat;
+            return applyWrittenSize(stat, _inodeNumber);
         }
 
         try
         {
-            CollectionAndDataObjectListAndSearchAO lao = factory_.getCollectionAndDataObjectListAndSearchAO(adminAcct_);
-            ObjStat objStat = lao.retrieveObjectStatForPath(path);
+            ObjStat objStat = statCatalogObject(path);
 
             log_.debug("statPath - iRODS stat info   = {}", objStat);
 
-            stat = new Stat();
-
-            setTime(stat, objStat);
-
-            log_.debug("statPath - Secret owner name = {}", objStat.getOwnerName());
-
-            String userName = IRODSIdMapper.NOBODY_USER;
-            String groupName = IRODSIdMapper.NOBODY_GROUP;
-            
-            if (getHighestUserPermissionForPath(path, acct.getUserName()).isPresent())
-            {
-                userName = acct.getUserName();
-            }
-
-            int userId = idMapper_.getUidByUserName(userName);
-            int groupId = IRODSIdMapper.NOBODY_GID;
-
-            setStatMode(path, stat, objStat, userName, acct.getUserName(), groupName);
-
-            stat.setUid(userId);
-            stat.setGid(groupId);
-            stat.setNlink(1);
-            stat.setDev(17);
-            stat.setIno((int) _inodeNumber);
-            stat.setRdev(0);
-            stat.setSize(objStat.getObjSize());
-            stat.setFileid((int) _inodeNumber);
-            stat.setGeneration(objStat.getModifiedAt().getTime());
-
-            log_.debug("statPath - User ID           = {}", userId);
-            log_.debug("statPath - Group ID          = {}", groupId);
-            log_.debug("statPath - Permissions       = {}", Stat.modeToString(stat.getMode()));
-            log_.debug("statPath - Stat              = {}", stat);
-
-            statObjectCache_.put(cachedStatKey, stat);
-
-            return stat;
+            return applyWrittenSize(statObjStat(objStat, path, _inodeNumber, acct.getUserName()), _inodeNumber);
         }
         catch (NumberFormatException | JargonException e)
         {
@@ -1250,54 +1506,464 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         }
     }
 
-    private void setTime(Stat _stat, ObjStat _objStat)
+    // Builds the stat information of "_path" from the iRODS stat information and
+    // caches it for "_userName".
+    private Stat statObjStat(ObjStat _objStat, String _path, long _inodeNumber, String _userName)
+        throws JargonException
     {
-        if (_objStat.getObjectType() == ObjectType.COLLECTION_HEURISTIC_STANDIN)
-        {
-            _stat.setATime(FIXED_TIMESTAMP);
-            _stat.setCTime(FIXED_TIMESTAMP);
-            _stat.setMTime(FIXED_TIMESTAMP);
-        }
-        else
-        {
-            _stat.setATime(_objStat.getModifiedAt().getTime());
-            _stat.setCTime(_objStat.getCreatedAt().getTime());
-            _stat.setMTime(_objStat.getModifiedAt().getTime());
-        }
-    }
+        ObjectType objType = _objStat.getObjectType();
+        List<UserFilePermission> perms = getPermissions(_path, objType);
+        Set<String> groups = getGroupNames(_userName);
 
-    private static Inode toFh(long _inodeNumber)
-    {
-        return Inode.forFile(Longs.toByteArray(_inodeNumber));
+        Stat stat = makeStat(_path, _inodeNumber, objType, _objStat.getCreatedAt(), _objStat.getModifiedAt(),
+                             _objStat.getObjSize(), perms, _userName, groups);
+
+        cacheStat(_userName, _path, stat, objType);
+
+        return stat;
     }
 
-    private Path getPath(long _inodeNumber) throws IOException
+    // Maps an object created through this server. Its iRODS object id is looked
+    // up so that its file handle can be resolved again after the inode has been
+    // evicted or the server has been restarted. The stat information is cached
+    // for the GETATTR that follows the creation.
+    private long mapNewObject(Path _path, String _userName) throws IOException
     {
-        Path path = inodeToPathMapper_.getInodeToPathMap().get(_inodeNumber);
+        ObjStat objStat = null;
 
-        if (path == null)
+        try
         {
-            throw new NoEntException("Path does not exist for [" + _inodeNumber + "]");
+            objStat = statCatalogObject(_path.toString());
+        }
+        catch (JargonException e)
+        {
+            log_.debug("mapNewObject - Could not stat [{}]: {}", _path, e.getMessage());
         }
 
-        return path;
-    }
-
-    private long getInodeNumber(Path _path) throws IOException
-    {
-        Long inodeNumber = inodeToPathMapper_.getPathToInodeMap().get(_path);
-
-        if (inodeNumber == null)
+        if (objStat == null)
         {
-            throw new NoEntException("Inode number does not exist for [" + _path + "]");
+            return updateInodeMap(() -> inodeToPathMapper_.getOrAssign(_path));
+        }
+
+        long objectId = objStat.getDataId();
+        long inodeNumber = updateInodeMap(() -> inodeToPathMapper_.getOrAssign(_path, objectId));
+
+        try
+        {
+            statObjStat(objStat, _path.toString(), inodeNumber, _userName);
+        }
+        catch (NumberFormatException | JargonException e)
+        {
+            log_.debug("mapNewObject - Could not cache stat information for [{}]: {}", _path, e.getMessage());
         }
 
         return inodeNumber;
     }
 
-    private static long toInodeNumber(Inode _inode)
+    // Builds the stat information of a listing entry and caches it, exactly as
+    // if statPath() had been called for it.
+    // @formatter:off
+    private Stat statListingEntry(CollectionAndDataObjectListingEntry _entry,
+                                  Path _path,
+                                  long _inodeNumber,
+                                  String _userName,
+                                  Set<String> _groups)
+        throws JargonException
+    // @formatter:on
+    {
+        String path = _path.toString();
+        List<UserFilePermission> perms = _entry.getUserFilePermission();
+
+        if (perms == null)
+        {
+            perms = new ArrayList<>();
+        }
+
+        // The listing fetched the ACLs of all entries with a single query. Keeping
+        // them saves a query per entry when access is checked or the ACL is read.
+        permissionsCache_.put(path, perms);
+
+        Stat stat = makeStat(path, _inodeNumber, _entry.getObjectType(), _entry.getCreatedAt(),
+                             _entry.getModifiedAt(), _entry.getDataSize(), perms, _userName, _groups);
+
+        cacheStat(_userName, path, stat, _entry.getObjectType());
+
+        return applyWrittenSize(stat, _inodeNumber);
+    }
+
+    // @formatter:off
+    private Stat makeStat(String _path,
+                          long _inodeNumber,
+                          ObjectType _objType,
+                          Date _createdAt,
+                          Date _modifiedAt,
+                          long _size,
+                          List<UserFilePermission> _perms,
+                          String _userName,
+                          Set<String> _groups)
+        throws JargonException
+    // @formatter:on
+    {
+        Stat stat = new Stat();
+
+        setTime(stat, _objType, _createdAt, _modifiedAt);
+
+        String userName = IRODSIdMapper.NOBODY_USER;
+        String groupName = IRODSIdMapper.NOBODY_GROUP;
+
+        if (getHighestUserPermissionForPath(_perms, _userName, _groups).isPresent())
+        {
+            userName = _userName;
+        }
+
+        int userId = idMapper_.getUidByUserName(userName);
+        int groupId = IRODSIdMapper.NOBODY_GID;
+
+        setStatMode(_path, stat, _objType, _perms, _userName, groupName, _groups);
+
+        stat.setUid(userId);
+        stat.setGid(groupId);
+        stat.setNlink(1);
+        stat.setDev(17);
+        stat.setIno((int) toFileId(_inodeNumber));
+        stat.setRdev(0);
+        stat.setSize(_size);
+        stat.setFileid(toFileId(_inodeNumber));
+        stat.setGeneration(toChangeAttribute(_inodeNumber, _modifiedAt));
+
+        log_.debug("makeStat - User ID     = {}", userId);
+        log_.debug("makeStat - Group ID    = {}", groupId);
+        log_.debug("makeStat - Permissions = {}", Stat.modeToString(stat.getMode()));
+        log_.debug("makeStat - Stat        = {}", stat);
+
+        return stat;
+    }
+
+    // Appends one query page of the collections ("_phase" == COLLECTIONS_PHASE) or
+    // data objects under "_path" to "_entries", starting at "_offset". Each entry
+    // gets a cookie that resumes the listing right after it. Returns the offset of
+    // the next page or -1 if the phase has no more results.
+    private int listPage(IRODSAccount _acct,
+                         String _path,
+                         Path _parentPath,
+                         int _phase,
+                         int _offset,
+                         Set<String> _groups,
+                         List<DirectoryEntry> _entries)
+        throws JargonException,
+        IOException
+    {
+        // Data objects with several replicas are listed once per replica. The rows
+        // are ordered by name, so duplicates are adjacent. The page starts one row
+        // early so that a duplicate of the last entry of the previous reply is
+        // recognized as well.
+        int start = Math.max(_offset - 1, 0);
+        List<CollectionAndDataObjectListingEntry> page = userConnections_.call(_acct, () -> {
+            CollectionAndDataObjectListAndSearchAO lao = factory_.getCollectionAndDataObjectListAndSearchAO(_acct);
+
+            return (_phase == COLLECTIONS_PHASE)
+                ? lao.listCollectionsUnderPathWithPermissions(_path, start)
+                : lao.listDataObjectsUnderPathWithPermissions(_path, start);
+        });
+
+        Path previous = null;
+
+        for (CollectionAndDataObjectListingEntry dataObj : page)
+        {
+            Path filePath = _parentPath.resolve(dataObj.getPathOrName());
+            log_.debug("listPage - Entry = {}", filePath);
+
+            if (dataObj.getCount() <= _offset || filePath.equals(previous))
+            {
+                previous = filePath;
+                continue;
+            }
+
+            previous = filePath;
+
+            long inodeNumber = updateInodeMap(() -> inodeToPathMapper_.getOrAssign(filePath, dataObj.getId()));
+            Stat stat = statListingEntry(dataObj, filePath, inodeNumber, _acct.getUserName(), _groups);
+            Inode inode = toFh(inodeNumber);
+            long cookie = makeListingCookie(_phase, dataObj.getCount());
+            _entries.add(new DirectoryEntry(filePath.getFileName().toString(), inode, stat, cookie));
+        }
+
+        if (page.isEmpty())
+        {
+            return -1;
+        }
+
+        CollectionAndDataObjectListingEntry last = page.get(page.size() - 1);
+
+        if (last.isLastResult() || last.getCount() <= _offset)
+        {
+            return -1;
+        }
+
+        return last.getCount();
+    }
+
+    // A cookie resumes the listing at "_offset" within the query results of
+    // "_phase". Cookie values below LISTING_RESERVED_COOKIES are reserved.
+    private static long makeListingCookie(int _phase, long _offset)
+    {
+        return ((long) _phase << LISTING_PHASE_SHIFT) | (_offset + LISTING_RESERVED_COOKIES);
+    }
+
+    private static int listingPhase(long _cookie)
+    {
+        return (int) (_cookie >>> LISTING_PHASE_SHIFT);
+    }
+
+    private static long listingOffset(long _cookie)
+    {
+        return (_cookie == 0) ? 0 : (_cookie & LISTING_OFFSET_MASK) - LISTING_RESERVED_COOKIES;
+    }
+
+    private static String makeMissingEntryKey(long _parentInodeNumber, String _name)
+    {
+        return _parentInodeNumber + "#" + _name;
+    }
+
+    // The verifier of a collection listing changes whenever the collection is
+    // modified, which allows clients to keep cached listings.
+    private byte[] collectionVerifier(Path _path, long _inodeNumber) throws IOException
+    {
+        return Longs.toByteArray(statPath(_path, _inodeNumber).getMTime());
+    }
+
+    // iRODS only updates the size of a data object in the catalog when it is
+    // closed. Data objects with open handles may therefore be larger than what
+    // the catalog reports.
+    private Stat applyWrittenSize(Stat _stat, long _inodeNumber)
+    {
+        long writtenSize = openFileTable_.getWrittenSize(_inodeNumber);
+
+        if (writtenSize <= _stat.getSize())
+        {
+            return _stat;
+        }
+
+        // "_stat" may be the instance held by the stat cache, which is shared
+        // with other threads and must keep the size reported by the catalog.
+        Stat stat = _stat.clone();
+        stat.setSize(writtenSize);
+
+        return stat;
+    }
+
+    private void closeOpenFiles(Path _path)
+    {
+        Long inodeNumber = inodeToPathMapper_.getInodeNumber(_path);
+
+        if (inodeNumber != null)
+        {
+            openFileTable_.close(inodeNumber);
+        }
+
+        // Handles of data objects beneath a collection would keep using paths
+        // that no longer exist once the collection is renamed or removed.
+        openFileTable_.closeDescendants(_path.toString());
+
+        invalidateBlockCache(_path);
+    }
+
+    private void invalidateBlockCache(Path _path)
+    {
+        if (blockCache_ != null)
+        {
+            blockCache_.invalidate(_path.toString());
+        }
+    }
+
+    private void setTime(Stat _stat, ObjectType _objType, Date _createdAt, Date _modifiedAt)
+    {
+        if (_objType == ObjectType.COLLECTION_HEURISTIC_STANDIN)
+        {
+            _stat.setATime(FIXED_TIMESTAMP);
+            _stat.setCTime(FIXED_TIMESTAMP);
+            _stat.setMTime(FIXED_TIMESTAMP);
+        }
+        else
+        {
+            _stat.setATime(_modifiedAt.getTime());
+            _stat.setCTime(_createdAt.getTime());
+            _stat.setMTime(_modifiedAt.getTime());
+        }
+    }
+
+    private Inode toFh(long _inodeNumber)
+    {
+        long objectId = inodeToPathMapper_.getObjectId(_inodeNumber);
+        int generation = inodeToPathMapper_.getGeneration(_inodeNumber);
+        return Inode.forFile(new FileHandle(_inodeNumber, objectId, generation, instanceId_, zone_).toBytes());
+    }
+
+    private static long makeInstanceId()
+    {
+        long instanceId;
+
+        do
+        {
+            instanceId = new SecureRandom().nextLong();
+        }
+        while (instanceId == 0);
+
+        return instanceId;
+    }
+
+    private Path getPath(Inode _inode) throws IOException
+    {
+        long inodeNumber = toInodeNumber(_inode);
+        Path path = inodeToPathMapper_.getPath(inodeNumber);
+
+        if (path == null)
+        {
+            throw new StaleException("Stale file handle for [" + inodeNumber + "]");
+        }
+
+        return path;
+    }
+
+    // Resolves a file handle to the local inode number of its object. The inode
+    // number in the handle is only a hint. It may have been evicted, or it may
+    // have been created by another server or before a restart, in which case the
+    // object is found through its object id.
+    private long toInodeNumber(Inode _inode) throws IOException
+    {
+        FileHandle fh = FileHandle.fromBytes(_inode.getFileId());
+        long inodeNumber = fh.getInodeNumber();
+        long objectId = fh.getObjectId();
+
+        if (fh.getZone() != null && !zone_.equals(fh.getZone()))
+        {
+            throw new StaleException("File handle belongs to zone [" + fh.getZone() + "]");
+        }
+
+        if (objectId == 0)
+        {
+            // Only the root is mapped to the same inode number everywhere. Any other
+            // inode number is local to the server process that created the handle.
+            if (fh.getZone() != null && fh.getInstanceId() != instanceId_
+                && inodeNumber != InodeToPathMapper.ROOT_INODE_NUMBER)
+            {
+                throw new StaleException("File handle of inode number [" + inodeNumber + "] was created elsewhere");
+            }
+
+            if (inodeToPathMapper_.getPath(inodeNumber) == null)
+            {
+                throw new NoEntException("Path does not exist for [" + inodeNumber + "]");
+            }
+
+            // The inode number was reused for another object since the handle was
+            // created. Handles of earlier versions carry no generation.
+            if (fh.getZone() != null && fh.getGeneration() != inodeToPathMapper_.getGeneration(inodeNumber))
+            {
+                throw new StaleException("Stale file handle for [" + inodeNumber + "]");
+            }
+
+            return inodeNumber;
+        }
+
+        if (inodeToPathMapper_.getObjectId(inodeNumber) == objectId)
+        {
+            return inodeNumber;
+        }
+
+        // The catalog can only be searched for object ids that fit into an int.
+        if (objectId < 0 || objectId > Integer.MAX_VALUE)
+        {
+            throw new StaleException("Stale file handle for object id [" + objectId + "]");
+        }
+
+        Long mappedInodeNumber = inodeToPathMapper_.getInodeNumberByObjectId(objectId);
+
+        if (mappedInodeNumber != null)
+        {
+            return mappedInodeNumber;
+        }
+
+        return restoreInodeNumber(objectId);
+    }
+
+    // Maps an object that is only known by its object id by looking up its path
+    // in the catalog.
+    private long restoreInodeNumber(long _objectId) throws IOException
+    {
+        log_.debug("restoreInodeNumber - Resolving object id [{}] ...", _objectId);
+
+        String path = null;
+
+        try
+        {
+            path = queryCatalog(() -> factory_.getDataObjectAO(adminAcct_).findById((int) _objectId).getAbsolutePath());
+        }
+        catch (FileNotFoundException e)
+        {
+            try
+            {
+                path = queryCatalog(() -> factory_.getCollectionAO(adminAcct_).findById((int) _objectId)
+                    .getAbsolutePath());
+            }
+            catch (FileNotFoundException e1)
+            {
+                log_.debug("restoreInodeNumber - Object id [{}] does not exist.", _objectId);
+            }
+            catch (JargonException e1)
+            {
+                log_.error(e1.getMessage());
+            }
+        }
+        catch (JargonException e)
+        {
+            log_.error(e.getMessage());
+        }
+
+        try
+        {
+            if (path != null)
+            {
+                Path objectPath = Paths.get(path);
+                return updateInodeMap(() -> inodeToPathMapper_.restore(objectPath, _objectId));
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            log_.debug("restoreInodeNumber - {}", e.getMessage());
+        }
+
+        inodeToPathMapper_.restoreFailed(_objectId);
+
+        throw new StaleException("Stale file handle for object id [" + _objectId + "]");
+    }
+
+    // The change attribute combines the generation of the inode number with the
+    // modification time, so that an object reusing an inode number never reports
+    // the change attribute of its predecessor.
+    private long toChangeAttribute(long _inodeNumber, Date _modifiedAt)
+    {
+        long generation = inodeToPathMapper_.getGeneration(_inodeNumber);
+        return (generation << CHANGE_ATTRIBUTE_TIME_BITS) | (_modifiedAt.getTime() & CHANGE_ATTRIBUTE_TIME_MASK);
+    }
+
+    // The file id reported to clients must be the same on every server, so it is
+    // the object id wherever that is known.
+    private long toFileId(long _inodeNumber)
     {
-        return Longs.fromByteArray(_inode.getFileId());
+        long objectId = inodeToPathMapper_.getObjectId(_inodeNumber);
+        return (objectId != 0) ? objectId : (_inodeNumber | LOCAL_FILE_ID_FLAG);
+    }
+
+    private long getInodeNumber(Path _path) throws IOException
+    {
+        Long inodeNumber = inodeToPathMapper_.getInodeNumber(_path);
+
+        if (inodeNumber == null)
+        {
+            throw new NoEntException("Inode number does not exist for [" + _path + "]");
+        }
+
+        return inodeNumber;
     }
 
     private boolean isSpecialCollection(String _path)
@@ -1315,31 +1981,69 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
 
     private List<UserFilePermission> getPermissions(String _path) throws JargonException
     {
-        List<UserFilePermission> perms = new ArrayList<>();
+        List<UserFilePermission> perms = permissionsCache_.get(_path);
 
-        switch (getObjectType(_path))
+        if (perms != null)
         {
-            case COLLECTION:
-                CollectionAO coa = factory_.getCollectionAO(adminAcct_);
-                return coa.listPermissionsForCollection(_path);
+            log_.debug("getPermissions - Returning cached permissions for [{}] ...", _path);
+            return perms;
+        }
 
+        return getPermissions(_path, getObjectType(_path));
+    }
+
+    private List<UserFilePermission> getPermissions(String _path, ObjectType _objType) throws JargonException
+    {
+        List<UserFilePermission> perms = permissionsCache_.get(_path);
+
+        if (perms != null)
+        {
+            log_.debug("getPermissions - Returning cached permissions for [{}] ...", _path);
+            return perms;
+        }
+
+        switch (_objType)
+        {
+            case COLLECTION:
             case DATA_OBJECT:
-                DataObjectAO doa = factory_.getDataObjectAO(adminAcct_);
-                return doa.listPermissionsForDataObject(_path);
+                break;
 
             default:
-                break;
+                return new ArrayList<>();
         }
 
-        return perms;
+        return permissionFlights_.call(_path, () -> {
+            // The previous query for the path may have finished in the meantime.
+            List<UserFilePermission> cachedPerms = permissionsCache_.get(_path);
+
+            if (cachedPerms != null)
+            {
+                return cachedPerms;
+            }
+
+            List<UserFilePermission> newPerms = (_objType == ObjectType.COLLECTION)
+                ? queryCatalog(() -> factory_.getCollectionAO(adminAcct_).listPermissionsForCollection(_path))
+                : queryCatalog(() -> factory_.getDataObjectAO(adminAcct_).listPermissionsForDataObject(_path));
+
+            permissionsCache_.put(_path, newPerms);
+
+            return newPerms;
+        });
     }
 
-    private void setStatMode(String _path, Stat _stat, ObjStat _objStat, String _ownerName, String _userName, String _groupName)
-        throws JargonException
+    // @formatter:off
+    private void setStatMode(String _path,
+                             Stat _stat,
+                             ObjectType _objType,
+                             List<UserFilePermission> _perms,
+                             String _userName,
+                             String _groupName,
+                             Set<String> _groups)
+    // @formatter:on
     {
         log_.debug("setStatMode - _path = {}", _path);
 
-        switch (_objStat.getObjectType())
+        switch (_objType)
         {
             case COLLECTION:
             {
@@ -1349,18 +2053,14 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
                     return;
                 }
 
-                CollectionAO coa = factory_.getCollectionAO(adminAcct_);
-                List<UserFilePermission> perms = coa.listPermissionsForCollection(_path);
-                _stat.setMode(Stat.S_IFDIR | calcMode(_userName, _groupName, _objStat.getObjectType(), perms));
+                _stat.setMode(Stat.S_IFDIR | calcMode(_userName, _groupName, _objType, _perms, _groups));
                 break;
             }
 
             case DATA_OBJECT:
             {
-                DataObjectAO doa = factory_.getDataObjectAO(adminAcct_);
-                List<UserFilePermission> perms = doa.listPermissionsForDataObject(_path);
                 // @formatter:off
-                _stat.setMode(Stat.S_IFREG | (~0110 & calcMode(_userName, _groupName, _objStat.getObjectType(), perms)));
+                _stat.setMode(Stat.S_IFREG | (~0110 & calcMode(_userName, _groupName, _objType, _perms, _groups)));
                 // @formatter:on
                 break;
             }
@@ -1386,31 +2086,47 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
                                                                          String _userName)
         throws JargonException
     {
-        // Get the list of groups containing the user.
-        UserGroupAO ugao = factory_.getUserGroupAO(adminAcct_);
-        List<UserGroup> groupsContainingUser = ugao.findUserGroupsForUser(_userName);
-        
+        return getHighestUserPermissionForPath(_perms, _userName, getGroupNames(_userName));
+    }
+
+    // Returns the names of the groups containing the user.
+    private Set<String> getGroupNames(String _userName) throws JargonException
+    {
+        return groupFlights_.call(_userName, () -> {
+            List<UserGroup> groups = queryCatalog(() -> factory_.getUserGroupAO(adminAcct_)
+                .findUserGroupsForUser(_userName));
+
+            // @formatter:off
+            return groups.stream()
+                .map(UserGroup::getUserGroupName)
+                .collect(Collectors.toSet());
+            // @formatter:on
+        });
+    }
+
+    private static Optional<UserFilePermission> getHighestUserPermissionForPath(List<UserFilePermission> _perms,
+                                                                                String _userName,
+                                                                                Set<String> _groups)
+    {
         // @formatter:off
         // Get the highest level of permissions for the user among the groups.
-        Optional<UserFilePermission> highestGroupPerm = _perms.parallelStream()
+        Optional<UserFilePermission> highestGroupPerm = _perms.stream()
             // Filter the incoming list "_perms" to groups the user is a part of.
-            .filter(p -> p.getUserType() == UserTypeEnum.RODS_GROUP &&
-                         groupsContainingUser.parallelStream()
-                             .anyMatch(ug -> p.getUserName().equals(ug.getUserGroupName())))
+            .filter(p -> p.getUserType() == UserTypeEnum.RODS_GROUP && _groups.contains(p.getUserName()))
             // Return the object holding the highest level of permissions.
             .max((lhs, rhs) -> Integer.compare(lhs.getFilePermissionEnum().ordinal(),
                                                rhs.getFilePermissionEnum().ordinal()));
         
         // Get the permissions for the user if they have explicit permission
         // to the object.
-        List<UserFilePermission> perms = _perms.parallelStream()
+        List<UserFilePermission> perms = _perms.stream()
             .filter(p -> p.getUserType() == UserTypeEnum.RODS_ADMIN || p.getUserType() == UserTypeEnum.RODS_USER)
             .filter(p -> p.getUserName().equals(_userName))
             .collect(Collectors.toList());
         
         highestGroupPerm.ifPresent(p -> perms.add(p));
         
-        return perms.parallelStream()
+        return perms.stream()
             .max((lhs, rhs) -> Integer.compare(lhs.getFilePermissionEnum().ordinal(),
                                                rhs.getFilePermissionEnum().ordinal()));
         // @formatter:on
@@ -1419,8 +2135,8 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
     private int calcMode(String _userName,
                          String _groupName,
                          ObjectType _objType,
-                         List<UserFilePermission> _perms)
-        throws JargonException
+                         List<UserFilePermission> _perms,
+                         Set<String> _groups)
     {
         int mode = 0100;
 
@@ -1429,7 +2145,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             mode = 0;
         }
         
-        Optional<UserFilePermission> perm = getHighestUserPermissionForPath(_perms, _userName);
+        Optional<UserFilePermission> perm = getHighestUserPermissionForPath(_perms, _userName, _groups);
         
         if (perm.isPresent())
         {
@@ -1454,51 +2170,225 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
         return mode;
     }
 
-    private static int getUserID()
+    private User findUser(String _userName) throws JargonException
     {
-        Subject subject = Subject.getSubject(AccessController.getContext());
-        String name = subject.getPrincipals().iterator().next().getName();
-        return Integer.parseInt(name);
+        return queryCatalog(() -> factory_.getUserAO(adminAcct_).findByName(_userName));
     }
 
-    private IRODSUser getCurrentIRODSUser() throws IOException
+    private ObjStat statCatalogObject(String _path) throws JargonException
     {
-        return idMapper_.resolveUser(getUserID());
+        return statCatalogObject(_path, true);
     }
 
-    private void closeCurrentConnection() throws IOException
+    // Paths that may well not exist (e.g. names probed by a lookup) should not be
+    // batched. A batch only reports that a path was not found as a data object or
+    // a collection, so a missing path would be looked up three times.
+    private ObjStat statCatalogObject(String _path, boolean _batch) throws JargonException
     {
-        factory_.closeSessionAndEatExceptions(getCurrentIRODSUser().getAccount());
+        return objStatFlights_.call(_path, () -> {
+            if (_batch && statBatcher_ != null)
+            {
+                try
+                {
+                    ObjStat objStat = statBatcher_.get(_path);
+
+                    if (objStat != null)
+                    {
+                        return objStat;
+                    }
+                }
+                catch (JargonException e)
+                {
+                    log_.debug("statCatalogObject - Batch query failed: {}", e.getMessage());
+                }
+            }
+
+            // Paths not found by the batch query (e.g. paths that do not exist or
+            // that are within special collections) are looked up individually, so
+            // that they are reported the same way as without batching.
+            return queryCatalog(() -> factory_.getCollectionAndDataObjectListAndSearchAO(adminAcct_)
+                .retrieveObjectStatForPath(_path));
+        });
     }
 
-    private static class AutoClosedIRODSFile implements AutoCloseable
+    // Looks up the stat information of "_paths" with one query for the data
+    // objects of each parent collection and one query for collections. Paths
+    // missing from the result must be looked up individually.
+    private Map<String, ObjStat> statCatalogObjects(List<String> _paths) throws JargonException
     {
-        private final IRODSFile file_;
+        Map<String, ObjStat> stats = new HashMap<>();
+        Set<String> requested = new HashSet<>();
+        Map<String, List<String>> namesByParent = new HashMap<>();
 
-        AutoClosedIRODSFile(IRODSFile _file)
+        for (String p : _paths)
         {
-            file_ = _file;
+            Path path = Paths.get(p);
+
+            // Values of GenQuery conditions are enclosed in single quotes.
+            if (p.indexOf('\'') >= 0 || path.getParent() == null || !requested.add(p))
+            {
+                continue;
+            }
+
+            namesByParent.computeIfAbsent(path.getParent().toString(), k -> new ArrayList<>())
+                .add(path.getFileName().toString());
         }
 
-        @Override
-        public void close()
+        if (requested.isEmpty())
         {
-            try
+            return stats;
+        }
+
+        for (Map.Entry<String, List<String>> e : namesByParent.entrySet())
+        {
+            // Data objects with several replicas are reported once per replica.
+            // The first row is used.
+            // @formatter:off
+            IRODSGenQueryBuilder dataObjectQuery = new IRODSGenQueryBuilder(true, null)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_DATA_ID)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_CREATE_TIME)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_MODIFY_TIME)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_OWNER_NAME)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_OWNER_ZONE)
+                .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_SIZE)
+                .addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.EQUAL,
+                                             e.getKey())
+                .addConditionAsMultiValueCondition(RodsGenQueryEnum.COL_DATA_NAME, QueryConditionOperators.IN,
+                                                   e.getValue());
+            // @formatter:on
+
+            for (IRODSQueryResultRow row : executeBatchQuery(dataObjectQuery))
             {
-                file_.close();
+                String path = Paths.get(row.getColumn(0), row.getColumn(1)).toString();
+
+                if (requested.contains(path) && !stats.containsKey(path))
+                {
+                    ObjStat objStat = toObjStat(row, path, ObjectType.DATA_OBJECT, 2);
+                    objStat.setObjSize(IRODSDataConversionUtil.getLongOrZeroFromIRODSValue(row.getColumn(7)));
+                    stats.put(path, objStat);
+                }
             }
-            catch (JargonException e)
+        }
+
+        List<String> collections = new ArrayList<>(requested);
+        collections.removeAll(stats.keySet());
+
+        if (collections.isEmpty())
+        {
+            return stats;
+        }
+
+        // @formatter:off
+        IRODSGenQueryBuilder collectionQuery = new IRODSGenQueryBuilder(true, null)
+            .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME)
+            .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_ID)
+            .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_CREATE_TIME)
+            .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_MODIFY_TIME)
+            .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_OWNER_NAME)
+            .addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_OWNER_ZONE)
+            .addConditionAsMultiValueCondition(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.IN,
+                                               collections);
+        // @formatter:on
+
+        for (IRODSQueryResultRow row : executeBatchQuery(collectionQuery))
+        {
+            String path = row.getColumn(0);
+            stats.put(path, toObjStat(row, path, ObjectType.COLLECTION, 1));
+        }
+
+        return stats;
+    }
+
+    // Rows beyond the limit are dropped. Their paths are looked up individually.
+    private List<IRODSQueryResultRow> executeBatchQuery(IRODSGenQueryBuilder _builder) throws JargonException
+    {
+        IRODSGenQueryFromBuilder query = _builder.exportIRODSQueryFromBuilder(statBatchRowLimit_);
+        IRODSQueryResultSet resultSet = queryCatalog(() -> factory_.getIRODSGenQueryExecutor(adminAcct_)
+            .executeIRODSQueryAndCloseResult(query, 0));
+
+        return resultSet.getResults();
+    }
+
+    // Builds the stat information from a row of a batch query. Starting at
+    // "_idColumn", the row holds the id, the creation time, the modification
+    // time, the owner name and the owner zone of the object.
+    private static ObjStat toObjStat(IRODSQueryResultRow _row, String _path, ObjectType _objType, int _idColumn)
+        throws JargonException
+    {
+        ObjStat objStat = new ObjStat();
+        objStat.setAbsolutePath(_path);
+        objStat.setObjectType(_objType);
+        objStat.setDataId(toDataId(IRODSDataConversionUtil.getLongOrZeroFromIRODSValue(_row.getColumn(_idColumn))));
+        objStat.setCreatedAt(IRODSDataConversionUtil.getDateFromIRODSValue(_row.getColumn(_idColumn + 1)));
+        objStat.setModifiedAt(IRODSDataConversionUtil.getDateFromIRODSValue(_row.getColumn(_idColumn + 2)));
+        objStat.setOwnerName(_row.getColumn(_idColumn + 3));
+        objStat.setOwnerZone(_row.getColumn(_idColumn + 4));
+
+        return objStat;
+    }
+
+    // Object ids that do not fit into the int of the stat information are treated
+    // as unknown (0) instead of being truncated into the id of another object.
+    private static int toDataId(long _objectId)
+    {
+        return (_objectId > 0 && _objectId <= Integer.MAX_VALUE) ? (int) _objectId : 0;
+    }
+
+    // Runs a catalog query as the proxy admin on a connection of the metadata
+    // pool. The query must not depend on the NFS subject. Failures of the pool
+    // (e.g. timeouts) are reported like failures of the query.
+    private <T> T queryCatalog(Callable<T> _query) throws JargonException
+    {
+        try
+        {
+            return metadataConnections_.call(adminAcct_, _query, queryTimeoutInMillis_);
+        }
+        catch (IOException e)
+        {
+            if (e.getCause() instanceof JargonException)
             {
-                log_.error(e.getMessage());
+                throw (JargonException) e.getCause();
             }
+
+            throw new JargonException(e.getMessage(), e);
+        }
+    }
+
+    // Runs an update of the inode map. The inode map throws an unchecked exception
+    // if an inode number could not be reserved on disk, which is reported to the
+    // client as an I/O error instead of escaping into nfs4j.
+    private static <T> T updateInodeMap(Supplier<T> _update) throws IOException
+    {
+        try
+        {
+            return _update.get();
         }
+        catch (UncheckedIOException e)
+        {
+            log_.error(e.getMessage());
+            throw e.getCause();
+        }
+    }
+
+    private static int getUserID()
+    {
+        Subject subject = Subject.getSubject(AccessController.getContext());
+        String name = subject.getPrincipals().iterator().next().getName();
+        return Integer.parseInt(name);
+    }
+
+    private IRODSUser getCurrentIRODSUser() throws IOException
+    {
+        return idMapper_.resolveUser(getUserID());
     }
 
-    private static class AutoClosedIRODSRandomAccessFile implements AutoCloseable
+    private static class AutoClosedIRODSFile implements AutoCloseable
     {
-        private final IRODSRandomAccessFile file_;
+        private final IRODSFile file_;
 
-        AutoClosedIRODSRandomAccessFile(IRODSRandomAccessFile _file)
+        AutoClosedIRODSFile(IRODSFile _file)
         {
             file_ = _file;
         }
@@ -1510,7 +2400,7 @@ public class IRODSVirtualFileSystem implements VirtualFileSystem, AclCheckable
             {
                 file_.close();
             }
-            catch (IOException e)
+            catch (JargonException e)
             {
                 log_.error(e.getMessage());
             }
@@ -0,0 +1,128 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Persists a bound on the inode numbers handed out by the inode map so that a
+// restarted server never hands out an inode number that clients may still hold
+// a handle for.
+//
+// Inode numbers are reserved in large blocks. The end of the current block is
+// written to disk before any number of the block is used, so the file is only
+// rewritten once per block and mapping paths does not wait on the disk. After a
+// restart, allocation continues at the end of the last reserved block. The file
+// is replaced atomically, so a crash leaves either the old or the new bound.
+class InodeNumberStore
+{
+    private static final Logger log_ = LoggerFactory.getLogger(InodeNumberStore.class);
+
+    private static final long MAGIC = 0x4e4653524f44494eL; // "NFSRODIN"
+    private static final long RESERVATION_SIZE = 1L << 20;
+    private static final int FILE_SIZE = 2 * Long.BYTES;
+
+    private final Path file_;
+    private volatile long limit_; // Inode numbers below this are reserved on disk.
+
+    InodeNumberStore(Path _file) throws IOException
+    {
+        file_ = _file;
+        limit_ = load();
+
+        log_.info("Inode numbers up to [{}] may have been handed out before.", limit_);
+    }
+
+    // Returns the first inode number that was never reserved.
+    long getLimit()
+    {
+        return limit_;
+    }
+
+    // Makes sure "_inodeNumber" is covered by a reservation on disk. Throws if
+    // the reservation could not be written, in which case "_inodeNumber" must not
+    // be handed out. The next call tries again.
+    void reserve(long _inodeNumber)
+    {
+        if (_inodeNumber < limit_)
+        {
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (_inodeNumber < limit_)
+            {
+                return;
+            }
+
+            long limit = _inodeNumber + RESERVATION_SIZE;
+
+            try
+            {
+                store(limit);
+            }
+            catch (IOException e)
+            {
+                // Handing out the number anyway would let a restart before the next
+                // successful write reuse it for another object.
+                log_.error("reserve - Could not persist inode number limit [{}]: {}", limit, e.getMessage());
+                throw new UncheckedIOException("Could not reserve inode number " + _inodeNumber, e);
+            }
+
+            limit_ = limit;
+        }
+    }
+
+    private long load() throws IOException
+    {
+        if (!Files.exists(file_))
+        {
+            return 0;
+        }
+
+        ByteBuffer bb = ByteBuffer.wrap(Files.readAllBytes(file_));
+
+        if (bb.remaining() != FILE_SIZE || bb.getLong() != MAGIC)
+        {
+            throw new IOException("Invalid inode map state file: " + file_);
+        }
+
+        return bb.getLong();
+    }
+
+    private void store(long _limit) throws IOException
+    {
+        Path tmpFile = file_.resolveSibling(file_.getFileName() + ".tmp");
+        Path dir = file_.toAbsolutePath().getParent();
+
+        // The directory of the state file may not exist yet on a fresh install.
+        if (dir != null)
+        {
+            Files.createDirectories(dir);
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(FILE_SIZE);
+        bb.putLong(MAGIC).putLong(_limit).flip();
+
+        try (FileChannel fc = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (bb.hasRemaining())
+            {
+                fc.write(bb);
+            }
+
+            fc.force(true);
+        }
+
+        Files.move(tmpFile, file_, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,15 +1,20 @@
 package org.irods.nfsrods.vfs;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.function.LongConsumer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
 import org.irods.jargon.core.connection.IRODSAccount;
 import org.irods.jargon.core.exception.DataNotFoundException;
 import org.irods.jargon.core.exception.JargonException;
@@ -22,23 +27,85 @@ import org.irods.nfsrods.config.ServerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class InodeToPathMapper
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+// Maps inode numbers to paths and back.
+//
+// Each mapped object is stored as its parent's inode number plus its name rather
+// than as a full path. Names are interned, so the long collection prefixes shared
+// by many objects are not repeated per object. Full paths are rebuilt on demand by
+// following the parent links up to the root.
+//
+// The reverse index from names to inode numbers holds primitive longs only (see
+// ChildTable), and the object id index refers to the entries themselves, so
+// mapping an object allocates nothing besides its entry.
+//
+// The number of entries is bounded. Once the limit is exceeded, entries are evicted
+// in CLOCK order. Only entries without mapped children whose iRODS object id is
+// known are evicted, because file handles carry that id and an evicted object can
+// be mapped again from the catalog (see restore()). The limit is therefore soft:
+// collections with mapped children and objects without a known id stay mapped
+// even above it.
+class InodeToPathMapper implements InodeToPathMapperMXBean
 {
     private static final Logger log_ = LoggerFactory.getLogger(IRODSIdMapper.class);
 
-    private Map<Long, Path> inodeToPath_;
-    private Map<Path, Long> pathToInode_;
-    private Set<Long> availableInodeNumbers_;
+    private static final long NO_PARENT = 0;
+    static final long ROOT_INODE_NUMBER = 1;
+
+    // Recycled inode numbers are queued together with the generation they are
+    // handed out with next. The generation is kept in the bits above the inode
+    // number.
+    private static final int INODE_NUMBER_BITS = 40;
+    private static final long INODE_NUMBER_MASK = (1L << INODE_NUMBER_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (Long.SIZE - INODE_NUMBER_BITS)) - 1;
+
+    // The maximum number of entries examined per eviction pass. This bounds the
+    // work added to a single mapping when many entries cannot be evicted.
+    private static final int MAX_EVICTION_SCAN = 64;
+
+    // The clock is swept once it holds more than twice as many entries as the map
+    // plus this slack. Each sweep step examines this many entries.
+    private static final int MIN_CLOCK_SLACK = 1024;
+    private static final int CLOCK_SWEEP_STEP = 4;
+
+    private final NonBlockingHashMapLong<Entry> entries_;                          // Key: <inode>
+    private final NonBlockingHashMapLong<ChildTable> children_; // Key: <parent_inode>
+    private final NonBlockingHashMapLong<Entry> objectIds_;     // Key: <object_id>
+    private final Interner<String> names_;
+    private final Queue<Entry> clock_;
+    private final AtomicInteger clockSize_; // ConcurrentLinkedQueue.size() is not constant time.
+    private final int maxEntries_;
+    private final LongAdder evictions_;
+    private final LongAdder reResolutions_;
+    private final LongAdder failedReResolutions_;
+    private final Queue<Long> freeInodeNumbers_;
     private AtomicLong fileID_;
+    private InodeNumberStore inodeNumberStore_;
+    private Path rootPath_;
+    private long rootInodeNumber_;
 
     public InodeToPathMapper(ServerConfig _config, IRODSAccessObjectFactory _factory) throws JargonException
     {
-        inodeToPath_ = new NonBlockingHashMap<>();
-        pathToInode_ = new NonBlockingHashMap<>();
-        availableInodeNumbers_ = Collections.synchronizedSet(new HashSet<>());
-        fileID_ = new AtomicLong(1); // Inode numbers start at 1
-        
+        this(_config.getNfsServerConfig().getInodeMapConfig().getMaxEntries());
+
         NFSServerConfig nfsSvrConfig = _config.getNfsServerConfig();
+        String stateFile = nfsSvrConfig.getInodeMapConfig().getStateFile();
+
+        if (stateFile != null)
+        {
+            try
+            {
+                inodeNumberStore_ = new InodeNumberStore(Paths.get(stateFile));
+                fileID_.set(Math.max(fileID_.get(), inodeNumberStore_.getLimit()));
+                inodeNumberStore_.reserve(fileID_.get());
+            }
+            catch (IOException | UncheckedIOException e)
+            {
+                throw new IllegalStateException("Could not load inode map state: " + e.getMessage(), e);
+            }
+        }
         IRODSClientConfig rodsSvrConfig = _config.getIRODSClientConfig();
         IRODSProxyAdminAccountConfig proxyConfig = rodsSvrConfig.getIRODSProxyAdminAcctConfig();
 
@@ -56,31 +123,424 @@ class InodeToPathMapper
         establishRoot(_factory.getIRODSFileFactory(acct).instanceIRODSFile(rootPath));
     }
 
-    public Map<Long, Path> getInodeToPathMap()
+    // Creates a mapper rooted at "_rootPath" without checking the root in iRODS
+    // and without persisting inode numbers. Used by benchmarks.
+    InodeToPathMapper(Path _rootPath, int _maxEntries)
+    {
+        this(_maxEntries);
+
+        rootPath_ = _rootPath;
+        mapRoot();
+    }
+
+    private InodeToPathMapper(int _maxEntries)
     {
-        return inodeToPath_;
+        entries_ = new NonBlockingHashMapLong<>();
+        children_ = new NonBlockingHashMapLong<>();
+        objectIds_ = new NonBlockingHashMapLong<>();
+        names_ = Interners.newWeakInterner();
+        clock_ = new ConcurrentLinkedQueue<>();
+        clockSize_ = new AtomicInteger();
+        maxEntries_ = _maxEntries;
+        evictions_ = new LongAdder();
+        reResolutions_ = new LongAdder();
+        failedReResolutions_ = new LongAdder();
+        freeInodeNumbers_ = new ConcurrentLinkedQueue<>();
+        fileID_ = new AtomicLong(ROOT_INODE_NUMBER + 1);
     }
 
-    public Map<Path, Long> getPathToInodeMap()
+    // Returns the path mapped to "_inodeNumber" or null if it is not mapped.
+    public Path getPath(long _inodeNumber)
     {
-        return pathToInode_;
+        Entry entry = entries_.get(_inodeNumber);
+
+        if (entry == null)
+        {
+            return null;
+        }
+
+        entry.referenced_ = true;
+
+        Deque<String> names = new ArrayDeque<>();
+
+        while (entry.parent_ != NO_PARENT)
+        {
+            names.push(entry.name_);
+            entry = entries_.get(entry.parent_);
+
+            // An ancestor was unmapped concurrently.
+            if (entry == null)
+            {
+                return null;
+            }
+        }
+
+        return Paths.get(rootPath_.toString(), names.toArray(new String[names.size()]));
     }
 
-    public Long getAndIncrementFileID()
+    // Returns the inode number mapped to "_path" or null if it is not mapped.
+    public Long getInodeNumber(Path _path)
     {
-        if (!availableInodeNumbers_.isEmpty())
+        if (!_path.startsWith(rootPath_))
         {
-            Iterator<Long> it = availableInodeNumbers_.iterator();
-            Long inodeNumber = it.next();
-            it.remove();
+            return null;
+        }
+
+        long inodeNumber = rootInodeNumber_;
+
+        for (Path name : rootPath_.relativize(_path))
+        {
+            // Relativizing the root against itself yields a single empty name.
+            if (name.toString().isEmpty())
+            {
+                continue;
+            }
+
+            ChildTable siblings = children_.get(inodeNumber);
+            long childInodeNumber = (siblings != null) ? siblings.get(inodeNumber, name.toString()) : 0;
+
+            if (childInodeNumber == 0)
+            {
+                return null;
+            }
+
+            inodeNumber = childInodeNumber;
+        }
+
+        return inodeNumber;
+    }
+
+    public boolean isMapped(Path _path)
+    {
+        return getInodeNumber(_path) != null;
+    }
+
+    // Returns the inode number mapped to the object with the iRODS object id
+    // "_objectId" or null if it is not mapped.
+    public Long getInodeNumberByObjectId(long _objectId)
+    {
+        Entry entry = objectIds_.get(_objectId);
+
+        // The indexed entry may have been replaced since. Only its inode number
+        // is used.
+        if (entry == null || getObjectId(entry.inodeNumber_) != _objectId)
+        {
+            return null;
+        }
+
+        return entry.inodeNumber_;
+    }
+
+    // Returns the iRODS object id (data id or collection id) recorded for
+    // "_inodeNumber" or 0 if it is not known.
+    public long getObjectId(long _inodeNumber)
+    {
+        Entry entry = entries_.get(_inodeNumber);
+        return (entry != null) ? entry.objectId_ : 0;
+    }
+
+    // Returns the generation of "_inodeNumber". The generation changes every time
+    // the inode number is reused for another object, so file handles of an earlier
+    // object can be told apart.
+    public int getGeneration(long _inodeNumber)
+    {
+        Entry entry = entries_.get(_inodeNumber);
+        return (entry != null) ? entry.generation_ : 0;
+    }
+
+    // Returns a free inode number together with its generation (see
+    // INODE_NUMBER_BITS). The free list is a lock-free queue, so allocations do
+    // not contend on a lock during bursts of creates.
+    private long allocateInodeNumber()
+    {
+        Long recycled = freeInodeNumbers_.poll();
+
+        if (recycled != null)
+        {
+            return recycled;
+        }
+
+        long inodeNumber = fileID_.getAndIncrement();
+
+        // Fails the mapping if the inode number could not be reserved on disk. The
+        // number is skipped, and the next allocation tries to reserve again.
+        if (inodeNumberStore_ != null)
+        {
+            inodeNumberStore_.reserve(inodeNumber);
+        }
+
+        return inodeNumber;
+    }
+
+    private void releaseInodeNumber(long _inodeNumber, int _generation)
+    {
+        freeInodeNumbers_.offer(((long) (_generation & GENERATION_MASK) << INODE_NUMBER_BITS) | _inodeNumber);
+    }
+
+    public long getOrAssign(Path _path)
+    {
+        return getOrAssign(_path, 0);
+    }
+
+    // Returns the inode number mapped to "_path", mapping a new inode number to
+    // it (and to any of its unmapped ancestors) if it is not mapped yet. Safe to
+    // call concurrently for the same path. "_objectId" is the iRODS object id of
+    // the path or 0 if it is not known.
+    public long getOrAssign(Path _path, long _objectId)
+    {
+        if (_path.equals(rootPath_))
+        {
+            return rootInodeNumber_;
+        }
+
+        if (!_path.startsWith(rootPath_))
+        {
+            throw new IllegalArgumentException("Path is outside of the mount point: " + _path);
+        }
+
+        long parentInodeNumber = getOrAssign(_path.getParent());
+        ChildTable siblings = getChildren(parentInodeNumber);
+        String name = _path.getFileName().toString();
+        long inodeNumber = siblings.get(parentInodeNumber, name);
+
+        if (inodeNumber != 0)
+        {
+            recordObjectId(inodeNumber, _objectId);
+            return inodeNumber;
+        }
+
+        long allocated = allocateInodeNumber();
+        long newInodeNumber = allocated & INODE_NUMBER_MASK;
+        int generation = (int) (allocated >>> INODE_NUMBER_BITS);
+        Entry entry = new Entry(newInodeNumber, generation, parentInodeNumber, names_.intern(name), _objectId);
+
+        // The inode number must resolve to the path before any caller can see it.
+        entries_.put(newInodeNumber, entry);
+
+        inodeNumber = siblings.putIfAbsent(parentInodeNumber, entry.name_, newInodeNumber);
+
+        if (inodeNumber != 0)
+        {
+            log_.debug("getOrAssign - [{}] was mapped concurrently, releasing inode number [{}] ...",
+                       _path, newInodeNumber);
+            entries_.remove(newInodeNumber, entry);
+
+            // The inode number was never handed out, so its generation stays.
+            releaseInodeNumber(newInodeNumber, generation);
             return inodeNumber;
         }
 
-        return fileID_.getAndIncrement();
+        log_.debug("getOrAssign - mapped inode number to path [{} => {}]", newInodeNumber, _path);
+
+        if (_objectId != 0)
+        {
+            objectIds_.put(_objectId, entry);
+        }
+
+        addToClock(entry);
+        evictIfNecessary();
+
+        return newInodeNumber;
+    }
+
+    // Maps the object with the iRODS object id "_objectId" at "_path", which was
+    // looked up in the catalog because a file handle referred to an object that
+    // is not mapped (it was evicted, or the handle was created before a restart or
+    // by another server).
+    public long restore(Path _path, long _objectId)
+    {
+        long inodeNumber = getOrAssign(_path, _objectId);
+
+        log_.debug("restore - restored object id to path [{} => {}]", _objectId, _path);
+
+        reResolutions_.increment();
+
+        return inodeNumber;
+    }
+
+    public void restoreFailed(long _objectId)
+    {
+        log_.debug("restoreFailed - could not restore object id [{}]", _objectId);
+        failedReResolutions_.increment();
+    }
+
+    @Override
+    public long getMappedEntries()
+    {
+        return entries_.size();
+    }
+
+    @Override
+    public long getMaxEntries()
+    {
+        return maxEntries_;
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictions_.sum();
+    }
+
+    @Override
+    public long getReResolutionCount()
+    {
+        return reResolutions_.sum();
+    }
+
+    @Override
+    public long getFailedReResolutionCount()
+    {
+        return failedReResolutions_.sum();
+    }
+
+    private void recordObjectId(long _inodeNumber, long _objectId)
+    {
+        Entry entry = entries_.get(_inodeNumber);
+
+        if (entry == null)
+        {
+            return;
+        }
+
+        entry.referenced_ = true;
+
+        if (_objectId != 0 && entry.objectId_ != _objectId)
+        {
+            Entry newEntry = new Entry(_inodeNumber, entry.generation_, entry.parent_, entry.name_, _objectId);
+
+            if (entries_.replace(_inodeNumber, entry, newEntry))
+            {
+                objectIds_.put(_objectId, newEntry);
+
+                if (entry.objectId_ != 0)
+                {
+                    unindexObjectId(entry.objectId_, _inodeNumber);
+                }
+
+                addToClock(newEntry);
+            }
+        }
+    }
+
+    // Advances the clock hand until the number of entries is within the limit.
+    // Entries that were used since the hand last passed them get another round.
+    private void evictIfNecessary()
+    {
+        for (int i = 0; i < MAX_EVICTION_SCAN && entries_.size() > maxEntries_; ++i)
+        {
+            Entry entry = clock_.poll();
+
+            if (entry == null)
+            {
+                return;
+            }
+
+            if (!isLive(entry))
+            {
+                clockSize_.decrementAndGet();
+                continue;
+            }
+
+            if (entry.referenced_ || entry.objectId_ == 0 || hasChildren(entry.inodeNumber_))
+            {
+                entry.referenced_ = false;
+                clock_.offer(entry);
+                continue;
+            }
+
+            evict(entry);
+        }
+    }
+
+    // Entries that were unmapped, evicted or replaced stay in the clock until
+    // the hand passes them. Below the limit the hand does not move, so the clock
+    // is swept separately whenever it has grown well beyond the map, dropping a
+    // few dead entries per call. While it is that large, at least half of its
+    // entries are dead, so the sweep removes more entries than are added.
+    private void addToClock(Entry _entry)
+    {
+        clock_.offer(_entry);
+        clockSize_.incrementAndGet();
+        sweepClockIfNecessary();
+    }
+
+    private void sweepClockIfNecessary()
+    {
+        if (clockSize_.get() <= 2 * entries_.size() + MIN_CLOCK_SLACK)
+        {
+            return;
+        }
+
+        for (int i = 0; i < CLOCK_SWEEP_STEP; ++i)
+        {
+            Entry entry = clock_.poll();
+
+            if (entry == null)
+            {
+                return;
+            }
+
+            if (isLive(entry))
+            {
+                clock_.offer(entry);
+            }
+            else
+            {
+                clockSize_.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean isLive(Entry _entry)
+    {
+        return entries_.get(_entry.inodeNumber_) == _entry;
+    }
+
+    private void evict(Entry _entry)
+    {
+        if (!entries_.remove(_entry.inodeNumber_, _entry))
+        {
+            return;
+        }
+
+        ChildTable siblings = children_.get(_entry.parent_);
+
+        if (siblings != null)
+        {
+            siblings.remove(_entry.name_, _entry.inodeNumber_);
+        }
+
+        children_.remove(_entry.inodeNumber_);
+        unindexObjectId(_entry.objectId_, _entry.inodeNumber_);
+
+        // The inode number is not reused. Clients may still hold handles for it.
+        evictions_.increment();
+
+        log_.debug("evict - evicted inode number [{}]", _entry.inodeNumber_);
+    }
+
+    private boolean hasChildren(long _inodeNumber)
+    {
+        ChildTable children = children_.get(_inodeNumber);
+        return children != null && !children.isEmpty();
+    }
+
+    // Removes the object id from the index if it still refers to "_inodeNumber".
+    private void unindexObjectId(long _objectId, long _inodeNumber)
+    {
+        Entry entry = objectIds_.get(_objectId);
+
+        if (entry != null && entry.inodeNumber_ == _inodeNumber)
+        {
+            objectIds_.remove(_objectId, entry);
+        }
     }
 
     private void establishRoot(IRODSFile _irodsMountPoint)
     {
+        rootPath_ = Paths.get(_irodsMountPoint.getAbsolutePath());
+
         if (!_irodsMountPoint.exists())
         {
             log_.error("Root file does not exist or it cannot be read");
@@ -99,72 +559,385 @@ class InodeToPathMapper
 
         log_.debug("establishRoot - Mapping root to [{}] ...", _irodsMountPoint);
 
-        map(getAndIncrementFileID(), _irodsMountPoint.getAbsolutePath());
+        mapRoot();
 
         log_.debug("establishRoot - Mapping successful.");
     }
 
-    public void map(Long _inodeNumber, String _path)
+    private void mapRoot()
     {
-        map(_inodeNumber, Paths.get(_path));
+        // The root inode number is fixed so that it stays the same across restarts.
+        rootInodeNumber_ = ROOT_INODE_NUMBER;
+        entries_.put(rootInodeNumber_, new Entry(rootInodeNumber_, 0, NO_PARENT, rootPath_.toString(), 0));
     }
 
-    public void map(Long _inodeNumber, Path _path)
+    // Unmaps "_path" along with any mapped descendants.
+    public void unmap(Long _inodeNumber, Path _path)
     {
-        log_.debug("map - mapping inode number to path [{} => {}] ...", _inodeNumber, _path);
+        log_.debug("unmap - unmapping inode number and path [{} => {}] ...", _inodeNumber, _path);
+
+        Entry entry = entries_.get(_inodeNumber);
+
+        if (entry == null || !_inodeNumber.equals(getInodeNumber(_path)))
+        {
+            throw new IllegalStateException("Invalid mapping");
+        }
+
+        ChildTable siblings = children_.get(entry.parent_);
+
+        if (siblings == null || !siblings.remove(entry.name_, _inodeNumber))
+        {
+            throw new IllegalStateException("Invalid mapping");
+        }
+
+        unmapSubtree(_inodeNumber);
+    }
 
-        Path otherPath = inodeToPath_.putIfAbsent(_inodeNumber, _path);
+    // Moves "_oldPath" to "_newPath". Descendants are resolved through their
+    // parent's inode number, so they follow without being touched. Anything
+    // previously mapped to "_newPath" is unmapped.
+    public void remap(Long _inodeNumber, Path _oldPath, Path _newPath)
+    {
+        log_.debug("remap - remapping inode number [{}] from [{}] to [{}] ...", _inodeNumber, _oldPath, _newPath);
 
-        log_.debug("map - previously mapped path [{}]", otherPath);
+        Entry entry = entries_.get(_inodeNumber);
 
-        if (otherPath != null)
+        if (entry == null || !_inodeNumber.equals(getInodeNumber(_oldPath)))
         {
-            throw new IllegalStateException("Inode number is already mapped to exisiting path");
+            throw new IllegalStateException("Invalid mapping");
         }
 
-        Long otherInodeNumber = pathToInode_.putIfAbsent(_path, _inodeNumber);
+        long newParentInodeNumber = getOrAssign(_newPath.getParent());
+        String newName = names_.intern(_newPath.getFileName().toString());
+        Entry newEntry = new Entry(_inodeNumber, entry.generation_, newParentInodeNumber, newName, entry.objectId_);
+
+        // Child tables confirm candidates through their entries, so the entry must
+        // carry the new parent and name before it is added to the new parent.
+        entries_.put(_inodeNumber, newEntry);
+        addToClock(newEntry);
+
+        ChildTable newSiblings = getChildren(newParentInodeNumber);
+        long replacedInodeNumber = newSiblings.put(newParentInodeNumber, newEntry.name_, _inodeNumber);
 
-        if (otherInodeNumber != null)
+        if (replacedInodeNumber != 0 && replacedInodeNumber != _inodeNumber)
         {
-            if (inodeToPath_.remove(_inodeNumber) != _path)
+            unmapSubtree(replacedInodeNumber);
+        }
+
+        ChildTable oldSiblings = children_.get(entry.parent_);
+
+        if (oldSiblings != null && (entry.parent_ != newEntry.parent_ || !entry.name_.equals(newEntry.name_)))
+        {
+            oldSiblings.remove(entry.name_, _inodeNumber);
+        }
+    }
+
+    private ChildTable getChildren(long _parentInodeNumber)
+    {
+        ChildTable siblings = children_.get(_parentInodeNumber);
+
+        if (siblings == null)
+        {
+            ChildTable newSiblings = new ChildTable(entries_);
+            siblings = children_.putIfAbsent(_parentInodeNumber, newSiblings);
+
+            if (siblings == null)
             {
-                throw new IllegalStateException("Failed to rollback mapping");
+                siblings = newSiblings;
             }
-
-            throw new IllegalStateException("Path is already mapped to exisiting inode number");
         }
+
+        return siblings;
     }
 
-    public void unmap(Long _inodeNumber, Path _path)
+    // Releases "_inodeNumber" and the inode numbers of everything mapped below it.
+    // The entry must already be detached from its parent.
+    private void unmapSubtree(long _inodeNumber)
     {
-        final boolean storeInAvailableInodeNumbersSet = true;
-        unmap(_inodeNumber, _path, storeInAvailableInodeNumbersSet);
+        Deque<Long> pending = new ArrayDeque<>();
+        pending.push(_inodeNumber);
+
+        while (!pending.isEmpty())
+        {
+            long inodeNumber = pending.pop();
+            ChildTable children = children_.remove(inodeNumber);
+
+            if (children != null)
+            {
+                children.forEach(pending::push);
+            }
+
+            Entry entry = entries_.remove(inodeNumber);
+
+            if (entry == null)
+            {
+                continue;
+            }
+
+            if (entry.objectId_ != 0)
+            {
+                unindexObjectId(entry.objectId_, inodeNumber);
+            }
+
+            releaseInodeNumber(inodeNumber, entry.generation_ + 1);
+            sweepClockIfNecessary();
+        }
     }
 
-    private void unmap(Long _inodeNumber, Path _path, boolean _storeInAvailableInodeNumbersSet)
+    // The children of a collection as pairs of name hash and inode number in a
+    // single primitive array, using open addressing with linear probing. Names are
+    // not stored. A candidate found by its hash is confirmed by the parent and name
+    // of its entry, which also tells apart names whose hashes collide.
+    //
+    // Reads are lock-free. Writers synchronize on the table. The inode number of a
+    // slot is written before its hash, so a reader that sees the hash sees the
+    // inode number as well. Growing the table publishes a new array.
+    private static final class ChildTable
     {
-        log_.debug("unmap - unmapping inode number and path [{} => {}] ...", _inodeNumber, _path);
+        private static final long EMPTY = 0;
+        private static final long REMOVED = 1;
+        private static final int MIN_CAPACITY = 4;
+
+        private final NonBlockingHashMapLong<Entry> entries_;
+        private volatile AtomicLongArray slots_; // Elements: <name_hash>, <inode_number>, ...
+        private volatile int size_;
+
+        // Slots that are not empty, including removed ones. Guarded by "this".
+        private int usedSlots_;
 
-        if (!_path.equals(inodeToPath_.remove(_inodeNumber)))
+        ChildTable(NonBlockingHashMapLong<Entry> _entries)
         {
-            throw new IllegalStateException("Invalid mapping");
+            entries_ = _entries;
+            slots_ = new AtomicLongArray(2 * MIN_CAPACITY);
         }
 
-        if (pathToInode_.remove(_path) != _inodeNumber)
+        // Returns the inode number of the child or 0 if it is not mapped.
+        long get(long _parentInodeNumber, String _name)
         {
-            throw new IllegalStateException("Invalid mapping");
+            long hash = hash(_name);
+            AtomicLongArray slots = slots_;
+            int mask = (slots.length() >> 1) - 1;
+
+            for (int i = index(hash, mask), n = 0; n <= mask; i = (i + 1) & mask, ++n)
+            {
+                long slotHash = slots.get(2 * i);
+
+                if (slotHash == EMPTY)
+                {
+                    break;
+                }
+
+                if (slotHash == hash)
+                {
+                    long inodeNumber = slots.get(2 * i + 1);
+
+                    if (isChild(inodeNumber, _parentInodeNumber, _name))
+                    {
+                        return inodeNumber;
+                    }
+                }
+            }
+
+            return 0;
+        }
+
+        // Returns the inode number already mapped to the child or 0 if
+        // "_inodeNumber" was added.
+        synchronized long putIfAbsent(long _parentInodeNumber, String _name, long _inodeNumber)
+        {
+            return put(_parentInodeNumber, _name, _inodeNumber, false);
+        }
+
+        // Returns the inode number previously mapped to the child or 0.
+        synchronized long put(long _parentInodeNumber, String _name, long _inodeNumber)
+        {
+            return put(_parentInodeNumber, _name, _inodeNumber, true);
+        }
+
+        synchronized boolean remove(String _name, long _inodeNumber)
+        {
+            long hash = hash(_name);
+            AtomicLongArray slots = slots_;
+            int mask = (slots.length() >> 1) - 1;
+
+            for (int i = index(hash, mask), n = 0; n <= mask; i = (i + 1) & mask, ++n)
+            {
+                long slotHash = slots.get(2 * i);
+
+                if (slotHash == EMPTY)
+                {
+                    break;
+                }
+
+                if (slotHash == hash && slots.get(2 * i + 1) == _inodeNumber)
+                {
+                    slots.set(2 * i, REMOVED);
+                    --size_;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        boolean isEmpty()
+        {
+            return size_ == 0;
+        }
+
+        void forEach(LongConsumer _action)
+        {
+            AtomicLongArray slots = slots_;
+
+            for (int i = 0; i < slots.length(); i += 2)
+            {
+                long slotHash = slots.get(i);
+
+                if (slotHash != EMPTY && slotHash != REMOVED)
+                {
+                    _action.accept(slots.get(i + 1));
+                }
+            }
         }
 
-        if (_storeInAvailableInodeNumbersSet)
+        // Must be called while holding the lock on "this".
+        private long put(long _parentInodeNumber, String _name, long _inodeNumber, boolean _replace)
         {
-            availableInodeNumbers_.add(_inodeNumber);
+            if (4 * (usedSlots_ + 1) > 3 * (slots_.length() >> 1))
+            {
+                resize();
+            }
+
+            long hash = hash(_name);
+            AtomicLongArray slots = slots_;
+            int mask = (slots.length() >> 1) - 1;
+            int free = -1;
+
+            for (int i = index(hash, mask), n = 0; n <= mask; i = (i + 1) & mask, ++n)
+            {
+                long slotHash = slots.get(2 * i);
+
+                if (slotHash == EMPTY)
+                {
+                    if (free < 0)
+                    {
+                        free = i;
+                        ++usedSlots_;
+                    }
+
+                    break;
+                }
+
+                if (slotHash == REMOVED)
+                {
+                    free = (free < 0) ? i : free;
+                    continue;
+                }
+
+                if (slotHash == hash)
+                {
+                    long inodeNumber = slots.get(2 * i + 1);
+
+                    if (isChild(inodeNumber, _parentInodeNumber, _name))
+                    {
+                        if (_replace)
+                        {
+                            slots.set(2 * i + 1, _inodeNumber);
+                        }
+
+                        return inodeNumber;
+                    }
+                }
+            }
+
+            slots.set(2 * free + 1, _inodeNumber);
+            slots.set(2 * free, hash);
+            ++size_;
+
+            return 0;
+        }
+
+        // Must be called while holding the lock on "this". Sizes the new array so
+        // that it is at most half full.
+        private void resize()
+        {
+            AtomicLongArray slots = slots_;
+            int capacity = MIN_CAPACITY;
+
+            while (2 * (size_ + 1) > capacity)
+            {
+                capacity <<= 1;
+            }
+
+            AtomicLongArray newSlots = new AtomicLongArray(2 * capacity);
+            int mask = capacity - 1;
+
+            for (int j = 0; j < slots.length(); j += 2)
+            {
+                long slotHash = slots.get(j);
+
+                if (slotHash == EMPTY || slotHash == REMOVED)
+                {
+                    continue;
+                }
+
+                int i = index(slotHash, mask);
+
+                while (newSlots.get(2 * i) != EMPTY)
+                {
+                    i = (i + 1) & mask;
+                }
+
+                newSlots.set(2 * i + 1, slots.get(j + 1));
+                newSlots.set(2 * i, slotHash);
+            }
+
+            usedSlots_ = size_;
+            slots_ = newSlots;
+        }
+
+        private boolean isChild(long _inodeNumber, long _parentInodeNumber, String _name)
+        {
+            Entry entry = entries_.get(_inodeNumber);
+            return entry != null && entry.parent_ == _parentInodeNumber && entry.name_.equals(_name);
+        }
+
+        // A 64-bit FNV-1a hash of the name. EMPTY and REMOVED are never returned.
+        private static long hash(String _name)
+        {
+            long hash = 0xcbf29ce484222325L;
+
+            for (int i = 0; i < _name.length(); ++i)
+            {
+                hash ^= _name.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+
+            return (hash == EMPTY || hash == REMOVED) ? hash + 2 : hash;
+        }
+
+        private static int index(long _hash, int _mask)
+        {
+            return (int) (_hash ^ (_hash >>> 32)) & _mask;
         }
     }
 
-    public void remap(Long _inodeNumber, Path _oldPath, Path _newPath)
+    private static final class Entry
     {
-        final boolean storeInAvailableInodeNumbersSet = false;
-        unmap(_inodeNumber, _oldPath, storeInAvailableInodeNumbersSet);
-        map(_inodeNumber, _newPath);
+        final long inodeNumber_;
+        final int generation_;
+        final long parent_;
+        final String name_;
+        final long objectId_;
+        volatile boolean referenced_; // The CLOCK reference bit.
+
+        Entry(long _inodeNumber, int _generation, long _parent, String _name, long _objectId)
+        {
+            inodeNumber_ = _inodeNumber;
+            generation_ = _generation;
+            parent_ = _parent;
+            name_ = _name;
+            objectId_ = _objectId;
+        }
     }
 }
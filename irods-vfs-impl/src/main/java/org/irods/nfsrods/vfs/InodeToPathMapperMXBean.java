@@ -0,0 +1,14 @@
+package org.irods.nfsrods.vfs;
+
+public interface InodeToPathMapperMXBean
+{
+    long getMappedEntries();
+
+    long getMaxEntries();
+
+    long getEvictionCount();
+
+    long getReResolutionCount();
+
+    long getFailedReResolutionCount();
+}
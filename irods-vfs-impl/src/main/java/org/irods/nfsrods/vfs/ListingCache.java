@@ -0,0 +1,164 @@
+package org.irods.nfsrods.vfs;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dcache.nfs.vfs.DirectoryEntry;
+import org.dcache.nfs.vfs.DirectoryStream;
+import org.irods.nfsrods.config.ReaddirConfig;
+
+// Keeps the most recently materialized page of collection listings, so that
+// the continuation READDIRs of a client are answered from memory instead of
+// listing the collection again. Pages are keyed by user, collection inode and
+// collection verifier, so a modified collection never matches a page. Pages
+// that have not been used for a while, and the least recently used pages once
+// the limit is reached, are dropped.
+class ListingCache implements ListingCacheMXBean
+{
+    private final int maxPages_;
+    private final long timeoutInMillis_;
+    private final LinkedHashMap<String, Page> pages_; // Key: <username>#<inode_number>#<verifier>
+
+    private final LongAdder hits_;
+    private final LongAdder misses_;
+
+    ListingCache(ReaddirConfig _config)
+    {
+        maxPages_ = _config.getMaxCachedListings();
+        timeoutInMillis_ = _config.getCachedListingTimeoutInMilliseconds();
+        pages_ = new LinkedHashMap<>(16, 0.75f, true);
+        hits_ = new LongAdder();
+        misses_ = new LongAdder();
+    }
+
+    // Returns the page if it starts at or contains the entry with "_cookie".
+    Page get(String _key, long _cookie)
+    {
+        Page page;
+
+        synchronized (this)
+        {
+            page = pages_.get(_key);
+
+            if (page != null && System.currentTimeMillis() - page.lastAccessTime_ > timeoutInMillis_)
+            {
+                pages_.remove(_key);
+                page = null;
+            }
+
+            if (page != null)
+            {
+                page.lastAccessTime_ = System.currentTimeMillis();
+            }
+        }
+
+        if (page == null || page.indexAfter(_cookie) < 0)
+        {
+            misses_.increment();
+            return null;
+        }
+
+        hits_.increment();
+
+        return page;
+    }
+
+    synchronized void put(String _key, Page _page)
+    {
+        if (maxPages_ == 0)
+        {
+            return;
+        }
+
+        pages_.put(_key, _page);
+
+        for (Iterator<Page> it = pages_.values().iterator(); pages_.size() > maxPages_ && it.hasNext();)
+        {
+            it.next();
+            it.remove();
+        }
+    }
+
+    @Override
+    public synchronized int getCachedListingCount()
+    {
+        return pages_.size();
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits_.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses_.sum();
+    }
+
+    // A consecutive part of a listing, starting right after the entry with the
+    // cookie it was listed from.
+    static final class Page
+    {
+        private final DirectoryStream stream_;
+        private final List<DirectoryEntry> entries_; // Ordered by cookie.
+        private final long[] cookies_;
+        private final long firstCookie_;
+        private final long nextCookie_;
+
+        // Guarded by the cache holding the page.
+        private long lastAccessTime_;
+
+        // "_nextCookie" is the cookie to continue the listing from, or -1 if the
+        // page ends with the last entry of the listing.
+        Page(byte[] _verifier, long _firstCookie, List<DirectoryEntry> _entries, long _nextCookie)
+        {
+            stream_ = new DirectoryStream(_verifier, _entries);
+            entries_ = _entries;
+            cookies_ = _entries.stream().mapToLong(DirectoryEntry::getCookie).toArray();
+            firstCookie_ = _firstCookie;
+            nextCookie_ = _nextCookie;
+            lastAccessTime_ = System.currentTimeMillis();
+        }
+
+        // The stream holds the whole page. nfs4j only returns the entries after
+        // the cookie of the request.
+        DirectoryStream getStream()
+        {
+            return stream_;
+        }
+
+        List<DirectoryEntry> getEntriesAfter(long _cookie)
+        {
+            return entries_.subList(indexAfter(_cookie), entries_.size());
+        }
+
+        boolean isComplete()
+        {
+            return nextCookie_ < 0;
+        }
+
+        long getNextCookie()
+        {
+            return nextCookie_;
+        }
+
+        // Returns the index of the first entry after "_cookie", or -1 if the page
+        // neither starts at nor contains the cookie.
+        private int indexAfter(long _cookie)
+        {
+            if (_cookie == firstCookie_)
+            {
+                return 0;
+            }
+
+            int i = Arrays.binarySearch(cookies_, _cookie);
+
+            return (i < 0) ? -1 : i + 1;
+        }
+    }
+}
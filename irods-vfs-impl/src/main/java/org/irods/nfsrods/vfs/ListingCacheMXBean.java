@@ -0,0 +1,10 @@
+package org.irods.nfsrods.vfs;
+
+public interface ListingCacheMXBean
+{
+    int getCachedListingCount();
+
+    long getHitCount();
+
+    long getMissCount();
+}
@@ -0,0 +1,50 @@
+package org.irods.nfsrods.vfs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tracks the number of bytes reserved against a fixed capacity. Shared by all
+// consumers of a memory pool so that no single file can exhaust it.
+class MemoryBudget
+{
+    private final long capacity_;
+    private final AtomicLong used_;
+
+    MemoryBudget(long _capacity)
+    {
+        capacity_ = _capacity;
+        used_ = new AtomicLong();
+    }
+
+    boolean tryReserve(long _bytes)
+    {
+        while (true)
+        {
+            long used = used_.get();
+
+            if (used + _bytes > capacity_)
+            {
+                return false;
+            }
+
+            if (used_.compareAndSet(used, used + _bytes))
+            {
+                return true;
+            }
+        }
+    }
+
+    void release(long _bytes)
+    {
+        used_.addAndGet(-_bytes);
+    }
+
+    long getCapacity()
+    {
+        return capacity_;
+    }
+
+    long getUsed()
+    {
+        return used_.get();
+    }
+}
@@ -0,0 +1,157 @@
+package org.irods.nfsrods.vfs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.nfsrods.config.StatBatchingConfig;
+
+// Collects requests for different keys arriving within a short window and
+// resolves them with a single call to the loader.
+//
+// The first request of a batch waits for the window to pass (or for the batch
+// to fill up) and then loads the whole batch on its own thread. Requests that
+// arrive in the meantime join the batch and wait for its result. Keys missing
+// from the result of the loader are answered with null.
+class MicroBatcher<K, V> implements MicroBatcherMXBean
+{
+    private final BatchLoader<K, V> loader_;
+    private final long windowInNanos_;
+    private final int maxBatchSize_;
+
+    // Guarded by "this".
+    private Map<K, CompletableFuture<V>> currentBatch_;
+
+    private final AtomicLong batches_ = new AtomicLong();
+    private final AtomicLong requests_ = new AtomicLong();
+
+    @FunctionalInterface
+    interface BatchLoader<K, V>
+    {
+        Map<K, V> load(List<K> _keys) throws JargonException;
+    }
+
+    MicroBatcher(StatBatchingConfig _config, BatchLoader<K, V> _loader)
+    {
+        loader_ = _loader;
+        windowInNanos_ = TimeUnit.MILLISECONDS.toNanos(_config.getWindowInMilliseconds());
+        maxBatchSize_ = _config.getMaxBatchSize();
+    }
+
+    V get(K _key) throws JargonException
+    {
+        Map<K, CompletableFuture<V>> batch;
+        CompletableFuture<V> future;
+        boolean leader = false;
+
+        synchronized (this)
+        {
+            if (currentBatch_ == null)
+            {
+                currentBatch_ = new LinkedHashMap<>();
+                leader = true;
+            }
+
+            batch = currentBatch_;
+            future = batch.computeIfAbsent(_key, k -> new CompletableFuture<>());
+
+            if (batch.size() >= maxBatchSize_)
+            {
+                currentBatch_ = null;
+                notifyAll();
+            }
+        }
+
+        requests_.incrementAndGet();
+
+        if (leader)
+        {
+            awaitWindow(batch);
+            load(batch);
+        }
+
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof JargonException)
+            {
+                throw (JargonException) e.getCause();
+            }
+
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    @Override
+    public long getBatchCount()
+    {
+        return batches_.get();
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        return requests_.get();
+    }
+
+    // Closes "_batch" once the window has passed, unless it has filled up before.
+    private synchronized void awaitWindow(Map<K, CompletableFuture<V>> _batch)
+    {
+        long deadline = System.nanoTime() + windowInNanos_;
+        long remaining = windowInNanos_;
+
+        try
+        {
+            while (currentBatch_ == _batch && remaining > 0)
+            {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // The batch is loaded regardless. Other requests depend on it.
+            Thread.currentThread().interrupt();
+        }
+
+        if (currentBatch_ == _batch)
+        {
+            currentBatch_ = null;
+        }
+    }
+
+    // The batch is closed, so it is not modified anymore.
+    private void load(Map<K, CompletableFuture<V>> _batch)
+    {
+        batches_.incrementAndGet();
+
+        try
+        {
+            Map<K, V> values = loader_.load(new ArrayList<>(_batch.keySet()));
+            _batch.forEach((k, f) -> f.complete(values.get(k)));
+        }
+        catch (Exception e)
+        {
+            _batch.values().forEach(f -> f.completeExceptionally(e));
+        }
+        catch (Error e)
+        {
+            _batch.values().forEach(f -> f.completeExceptionally(e));
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.irods.nfsrods.vfs;
+
+public interface MicroBatcherMXBean
+{
+    long getBatchCount();
+
+    long getRequestCount();
+}
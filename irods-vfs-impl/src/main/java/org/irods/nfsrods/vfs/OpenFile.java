@@ -0,0 +1,593 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.jargon.core.pub.io.FileIOOperations;
+import org.irods.jargon.core.pub.io.IRODSRandomAccessFile;
+import org.irods.nfsrods.config.ParallelReadConfig;
+import org.irods.nfsrods.config.ReadAheadConfig;
+import org.irods.nfsrods.config.WriteBehindConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// An iRODS data object held open on behalf of a single user. All I/O is carried
+// out on the session thread that opened the data object, so the iRODS file
+// descriptor stays valid across NFS requests. The current offset is tracked so
+// that sequential I/O does not require a seek. Sequential reads are served
+// through a read-ahead buffer when enabled, and read-ahead of large data
+// objects is spread over additional streams (see ParallelStreams). UNSTABLE
+// writes are buffered when write-behind is enabled (see WriteBehind), or
+// staged locally if the handle is spooling (see WriteSpool).
+class OpenFile
+{
+    private static final Logger log_ = LoggerFactory.getLogger(OpenFile.class);
+
+    // The size of the buffer used to copy a spool to iRODS through this handle.
+    private static final int DRAIN_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final IRODSAccessObjectFactory factory_;
+    private final IRODSConnectionPool connections_;
+    private final BufferPool bufferPool_;
+    private final IRODSSessionThread session_;
+    private final long inodeNumber_;
+    private final String path_;
+    private final AtomicLong writtenSize_;
+    private final ReadAhead readAhead_;
+    private final WriteBehind writeBehind_;
+    private final ParallelReadConfig parallelReadConfig_;
+    private final Semaphore parallelReadPermits_;
+    private final AtomicInteger nextStream_;
+    private volatile long objectSize_;
+    private volatile long lastAccessTime_;
+    private final CompletableFuture<Void> closed_;
+
+    // Writes to "spool_" are guarded by "spoolLock_".
+    private final Object spoolLock_;
+    private volatile WriteSpool spool_;
+
+    // These members are guarded by "this".
+    private ParallelStreams parallelStreams_;
+    private boolean parallelStreamsRequested_;
+
+    // These members must only be accessed from the session thread.
+    private IRODSRandomAccessFile file_;
+    private long position_;
+
+    OpenFile(IRODSAccessObjectFactory _factory,
+             IRODSConnectionPool _connections,
+             IRODSSessionThread _session,
+             long _inodeNumber,
+             String _path,
+             ReadAheadConfig _readAheadConfig,
+             MemoryBudget _readAheadBudget,
+             ParallelReadConfig _parallelReadConfig,
+             Semaphore _parallelReadPermits,
+             WriteBehindConfig _writeBehindConfig,
+             MemoryBudget _writeBehindBudget,
+             BufferPool _bufferPool)
+    {
+        factory_ = _factory;
+        connections_ = _connections;
+        bufferPool_ = _bufferPool;
+        session_ = _session;
+        inodeNumber_ = _inodeNumber;
+        path_ = _path;
+        writtenSize_ = new AtomicLong(-1);
+        readAhead_ = _readAheadConfig.isEnabled()
+            ? new ReadAhead(this, _readAheadConfig, _readAheadBudget, _bufferPool) : null;
+        writeBehind_ = _writeBehindConfig.isEnabled()
+            ? new WriteBehind(this, _writeBehindConfig.getBufferSize(), _writeBehindBudget, _bufferPool) : null;
+        parallelReadConfig_ = _parallelReadConfig;
+        parallelReadPermits_ = _parallelReadPermits;
+        nextStream_ = new AtomicInteger();
+        spoolLock_ = new Object();
+        objectSize_ = -1;
+        lastAccessTime_ = System.currentTimeMillis();
+        closed_ = new CompletableFuture<>();
+    }
+
+    long getInodeNumber()
+    {
+        return inodeNumber_;
+    }
+
+    String getPath()
+    {
+        return path_;
+    }
+
+    IRODSAccount getAccount()
+    {
+        return session_.getAccount();
+    }
+
+    long getLastAccessTime()
+    {
+        return lastAccessTime_;
+    }
+
+    // Completes once the data object has been closed after close() was called.
+    // Fails with the first error of the writes buffered by this handle that has
+    // not been reported by commit(), since the client may still send a COMMIT
+    // for them.
+    CompletableFuture<Void> getCloseFuture()
+    {
+        return closed_;
+    }
+
+    // Returns the size of the data object implied by the writes made through
+    // this handle, or -1 if nothing has been written. iRODS does not update the
+    // catalog until the data object is closed, so this is needed to report the
+    // correct size while the handle is open.
+    long getWrittenSize()
+    {
+        return writtenSize_.get();
+    }
+
+    // Stages all further writes in "_spool" until the data object is committed
+    // or closed. Only possible before anything has been written through this
+    // handle.
+    boolean startSpool(WriteSpool _spool)
+    {
+        synchronized (spoolLock_)
+        {
+            if (spool_ != null || writtenSize_.get() >= 0)
+            {
+                return false;
+            }
+
+            log_.debug("startSpool - Spooling writes to [{}].", path_);
+            spool_ = _spool;
+
+            return true;
+        }
+    }
+
+    boolean isSpooling()
+    {
+        return spool_ != null;
+    }
+
+    // Returns WriteSpool.DELETED if the handle is not spooling.
+    int readFromSpool(byte[] _buffer, long _offset, int _count)
+    {
+        WriteSpool spool = spool_;
+        return (spool != null) ? spool.read(_buffer, _offset, _count) : WriteSpool.DELETED;
+    }
+
+    int read(byte[] _buffer, long _offset, int _count) throws IOException
+    {
+        lastAccessTime_ = System.currentTimeMillis();
+
+        flush();
+
+        if (readAhead_ != null)
+        {
+            return readAhead_.read(_buffer, _offset, _count);
+        }
+
+        return readDirect(_buffer, 0, _offset, _count);
+    }
+
+    int readDirect(byte[] _buffer, int _bufferOffset, long _offset, int _count) throws IOException
+    {
+        return session_.call(() -> {
+            try
+            {
+                seek(_offset);
+
+                int bytesRead = file_.read(_buffer, _bufferOffset, _count);
+
+                if (bytesRead > 0)
+                {
+                    position_ += bytesRead;
+                }
+
+                return bytesRead;
+            }
+            catch (IOException | JargonException e)
+            {
+                position_ = -1;
+                throw e;
+            }
+        });
+    }
+
+    // Reads until the buffer is full or the end of the data object is reached.
+    // The returned future yields the number of bytes read. Large data objects
+    // are read round-robin through this handle and the parallel streams.
+    Future<Integer> readFullyAsync(byte[] _buffer, long _offset, int _count) throws IOException
+    {
+        ParallelStreams streams = getParallelStreams();
+
+        if (streams != null)
+        {
+            int stream = Math.floorMod(nextStream_.getAndIncrement(), streams.size() + 1);
+
+            if (stream > 0)
+            {
+                return streams.readFullyAsync(stream - 1, _buffer, _offset, _count);
+            }
+        }
+
+        return session_.submit(() -> {
+            try
+            {
+                seek(_offset);
+
+                int total = 0;
+
+                while (total < _count)
+                {
+                    int bytesRead = file_.read(_buffer, total, _count - total);
+
+                    if (bytesRead <= 0)
+                    {
+                        break;
+                    }
+
+                    position_ += bytesRead;
+                    total += bytesRead;
+                }
+
+                return total;
+            }
+            catch (IOException | JargonException e)
+            {
+                position_ = -1;
+                throw e;
+            }
+        });
+    }
+
+    // Writes the data to iRODS, or buffers it if "_stable" is false and the
+    // handle is spooling or write-behind is enabled. Returns true if the data
+    // was buffered, in which case commit() must be called to make it stable.
+    boolean write(byte[] _buffer, int _bufferOffset, long _offset, int _count, boolean _stable) throws IOException
+    {
+        lastAccessTime_ = System.currentTimeMillis();
+
+        boolean buffered = spool_ != null && writeToSpool(_buffer, _bufferOffset, _offset, _count, _stable);
+
+        if (!buffered && writeBehind_ != null)
+        {
+            if (_stable)
+            {
+                // Buffered data must not overwrite this write later on.
+                writeBehind_.flush();
+            }
+            else
+            {
+                buffered = writeBehind_.write(_buffer, _bufferOffset, _offset, _count);
+            }
+        }
+
+        if (!buffered)
+        {
+            session_.call(() -> writeOnSessionThread(_buffer, _bufferOffset, _offset, _count));
+        }
+
+        writtenSize_.accumulateAndGet(_offset + _count, Math::max);
+
+        invalidateReadAhead();
+        closeParallelStreams();
+
+        return buffered;
+    }
+
+    // Queues a write on the session thread. "_onDone" runs once the write has
+    // completed, whether it succeeded or not.
+    Future<Void> writeAsync(byte[] _buffer, long _offset, int _count, Runnable _onDone) throws IOException
+    {
+        return session_.submit(() -> {
+            try
+            {
+                return writeOnSessionThread(_buffer, 0, _offset, _count);
+            }
+            finally
+            {
+                _onDone.run();
+            }
+        });
+    }
+
+    // Waits for buffered writes to reach iRODS.
+    void flush() throws IOException
+    {
+        if (writeBehind_ != null)
+        {
+            writeBehind_.flush();
+        }
+    }
+
+    // Waits for buffered writes to reach iRODS. Throws if any of them failed
+    // since the previous commit. A spool is uploaded, after which writes go to
+    // iRODS directly.
+    void commit() throws IOException
+    {
+        synchronized (spoolLock_)
+        {
+            if (spool_ != null)
+            {
+                uploadSpool();
+            }
+        }
+
+        if (writeBehind_ != null)
+        {
+            writeBehind_.commit();
+        }
+    }
+
+    void invalidateReadAhead()
+    {
+        if (readAhead_ != null)
+        {
+            readAhead_.invalidate();
+        }
+    }
+
+    // Writes buffered data to iRODS and closes the data object in the background
+    // (see getCloseFuture()).
+    void close()
+    {
+        invalidateReadAhead();
+        closeParallelStreams();
+
+        List<Future<Void>> pendingWrites = (writeBehind_ != null) ? writeBehind_.close() : Collections.emptyList();
+
+        try
+        {
+            WriteSpool spool = spool_;
+
+            // Runs after all queued writes, so "pendingWrites" are done by then.
+            session_.submit(() -> {
+                IOException error = null;
+
+                if (spool != null)
+                {
+                    // Readers keep reading from the spool until it is deleted.
+                    try
+                    {
+                        uploadSpoolOnSessionThread(spool);
+                    }
+                    catch (IOException | JargonException e)
+                    {
+                        log_.error("close - Failed to upload spool for [{}]: {}", path_, e.getMessage());
+                        error = (e instanceof IOException) ? (IOException) e : new IOException(e);
+                    }
+                    finally
+                    {
+                        spool.delete();
+                    }
+                }
+
+                closeFileOnSessionThread();
+                completeClose(error, pendingWrites);
+
+                return null;
+            });
+        }
+        catch (IOException e)
+        {
+            // The session has already been closed.
+            completeClose(null, pendingWrites);
+        }
+
+        session_.close();
+    }
+
+    // Must not block on the lock of "writeBehind_", which may be held by a
+    // thread waiting for this session thread.
+    private void completeClose(IOException _error, List<Future<Void>> _pendingWrites)
+    {
+        IOException error = _error;
+
+        for (Future<Void> f : _pendingWrites)
+        {
+            try
+            {
+                IRODSSessionThread.await(f);
+            }
+            catch (IOException e)
+            {
+                error = (error != null) ? error : e;
+            }
+        }
+
+        if (error != null)
+        {
+            closed_.completeExceptionally(error);
+        }
+        else
+        {
+            closed_.complete(null);
+        }
+    }
+
+    void awaitClose(long _timeoutInMillis)
+    {
+        session_.awaitClose(_timeoutInMillis);
+    }
+
+    // Returns false if the data must be written to iRODS, in which case the
+    // spool has been emptied.
+    private boolean writeToSpool(byte[] _buffer, int _bufferOffset, long _offset, int _count, boolean _stable)
+        throws IOException
+    {
+        synchronized (spoolLock_)
+        {
+            if (spool_ == null)
+            {
+                return false;
+            }
+
+            if (!_stable && spool_.write(_buffer, _bufferOffset, _offset, _count))
+            {
+                return true;
+            }
+
+            if (_stable)
+            {
+                uploadSpool();
+            }
+            else
+            {
+                // The spool is full, continue with direct writes.
+                drainSpool();
+            }
+
+            return false;
+        }
+    }
+
+    // Must be called while holding "spoolLock_".
+    private void uploadSpool() throws IOException
+    {
+        WriteSpool spool = spool_;
+
+        session_.call(() -> {
+            uploadSpoolOnSessionThread(spool);
+            return null;
+        });
+
+        spool.delete();
+        spool_ = null;
+    }
+
+    private void uploadSpoolOnSessionThread(WriteSpool _spool) throws IOException, JargonException
+    {
+        // The upload replaces the data object, so an open descriptor would be stale.
+        closeFileOnSessionThread();
+        _spool.upload(factory_, session_.getAccount(), path_);
+    }
+
+    // Must be called while holding "spoolLock_". Copies the spool to iRODS
+    // through this handle.
+    private void drainSpool() throws IOException
+    {
+        WriteSpool spool = spool_;
+        byte[] buffer = bufferPool_.acquire(DRAIN_BUFFER_SIZE);
+        long offset = 0;
+        int bytesRead;
+
+        log_.debug("drainSpool - Writing [{}] spooled bytes to [{}] ...", spool.length(), path_);
+
+        try
+        {
+            while ((bytesRead = spool.read(buffer, offset, buffer.length)) > 0)
+            {
+                final long position = offset;
+                final int count = bytesRead;
+                session_.call(() -> writeOnSessionThread(buffer, 0, position, count));
+                offset += bytesRead;
+            }
+        }
+        finally
+        {
+            bufferPool_.release(buffer);
+        }
+
+        spool.delete();
+        spool_ = null;
+    }
+
+    private void closeFileOnSessionThread()
+    {
+        if (file_ != null)
+        {
+            log_.debug("close - Closing [{}] ...", path_);
+
+            try
+            {
+                file_.close();
+            }
+            catch (IOException e)
+            {
+                log_.error(e.getMessage());
+            }
+
+            file_ = null;
+        }
+    }
+
+    // Parallel streams are opened once per handle, and only for data objects
+    // that have not been written to through it. Streams other than this one
+    // may not observe writes that are still in flight.
+    private synchronized ParallelStreams getParallelStreams()
+    {
+        if (!parallelStreamsRequested_ &&
+            parallelReadConfig_.isEnabled() &&
+            parallelReadConfig_.getStreamsPerFile() > 1 &&
+            objectSize_ >= parallelReadConfig_.getMinObjectSize() &&
+            writtenSize_.get() < 0)
+        {
+            parallelStreamsRequested_ = true;
+            parallelStreams_ = ParallelStreams.open(factory_, connections_, session_.getAccount(), inodeNumber_,
+                                                    path_, parallelReadConfig_.getStreamsPerFile() - 1,
+                                                    parallelReadPermits_);
+        }
+
+        return parallelStreams_;
+    }
+
+    private synchronized void closeParallelStreams()
+    {
+        parallelStreamsRequested_ = true;
+
+        if (parallelStreams_ != null)
+        {
+            parallelStreams_.close();
+            parallelStreams_ = null;
+        }
+    }
+
+    private Void writeOnSessionThread(byte[] _buffer, int _bufferOffset, long _offset, int _count)
+        throws IOException, JargonException
+    {
+        try
+        {
+            seek(_offset);
+            file_.write(_buffer, _bufferOffset, _count);
+            position_ += _count;
+        }
+        catch (IOException | JargonException e)
+        {
+            position_ = -1;
+            throw e;
+        }
+
+        return null;
+    }
+
+    private void seek(long _offset) throws IOException, JargonException
+    {
+        if (file_ == null)
+        {
+            log_.debug("seek - Opening [{}] ...", path_);
+            file_ = factory_.getIRODSFileFactory(session_.getAccount()).instanceIRODSRandomAccessFile(path_);
+            position_ = 0;
+
+            if (parallelReadConfig_.isEnabled())
+            {
+                objectSize_ = factory_.getIRODSFileFactory(session_.getAccount()).instanceIRODSFile(path_).length();
+            }
+        }
+
+        if (position_ != _offset)
+        {
+            file_.seek(_offset, FileIOOperations.SeekWhenceType.SEEK_START);
+            position_ = _offset;
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.nfsrods.config.NFSServerConfig;
+import org.irods.nfsrods.config.OpenFileConfig;
+import org.irods.nfsrods.config.ParallelReadConfig;
+import org.irods.nfsrods.config.ReadAheadConfig;
+import org.irods.nfsrods.config.WriteBehindConfig;
+import org.irods.nfsrods.config.WriteSpoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Keeps iRODS data objects open across NFS READ/WRITE requests. Handles are
+// keyed by inode number and iRODS user and are closed once they have been idle
+// for longer than the configured timeout.
+//
+// Every handle holds a session of the connection pool (see
+// IRODSConnectionPool.openSession()). If the pool has no room for another one,
+// the least recently used handle is closed to give its session back.
+//
+// If spooling is enabled, writes to data objects created through this server
+// are staged locally when they start at offset zero (see WriteSpool).
+//
+// Closing a handle does not lose track of its UNSTABLE writes. A later COMMIT
+// for the inode waits for them and reports their errors.
+class OpenFileTable
+{
+    private static final Logger log_ = LoggerFactory.getLogger(OpenFileTable.class);
+
+    private static final long CLOSE_TIMEOUT_IN_MILLIS = 10000;
+    private static final OpenFile[] NO_FILES = new OpenFile[0];
+
+    private final IRODSAccessObjectFactory factory_;
+    private final IRODSConnectionPool connections_;
+    private final Map<String, OpenFile> openFiles_; // Key: <inode_number>#<username>
+
+    // The handles of "openFiles_" by inode, so that I/O does not scan every open
+    // file. A handle is added before it is put into "openFiles_" and removed after
+    // it has been removed from it. The arrays are never modified.
+    private final NonBlockingHashMapLong<OpenFile[]> filesByInode_; // Key: <inode_number>
+
+    // Handles that have been closed while writes buffered by them may still be
+    // pending or may have failed. A COMMIT must wait for them and report their
+    // errors even though the handles are gone. Guarded by itself.
+    private final Map<Long, List<CompletableFuture<Void>>> closingFiles_; // Key: <inode_number>
+    private final ScheduledExecutorService scheduler_;
+    private final long idleTimeoutInMillis_;
+    private final int maxOpenFiles_;
+    private final ReadAheadConfig readAheadConfig_;
+    private final MemoryBudget readAheadBudget_;
+    private final ParallelReadConfig parallelReadConfig_;
+    private final Semaphore parallelReadPermits_;
+    private final WriteBehindConfig writeBehindConfig_;
+    private final MemoryBudget writeBehindBudget_;
+    private final WriteSpoolConfig writeSpoolConfig_;
+    private final MemoryBudget writeSpoolSpace_;
+    private final Path writeSpoolDirectory_; // Null if spooling is disabled.
+    private final Map<Long, Long> createdFiles_; // Key: <inode_number>, Value: <creation_time>
+    private final BufferPool bufferPool_;
+
+    // @formatter:off
+    OpenFileTable(IRODSAccessObjectFactory _factory,
+                  IRODSConnectionPool _connections,
+                  NFSServerConfig _config,
+                  BufferPool _bufferPool)
+    // @formatter:on
+    {
+        OpenFileConfig openFileConfig = _config.getOpenFileConfig();
+
+        factory_ = _factory;
+        connections_ = _connections;
+        openFiles_ = new NonBlockingHashMap<>();
+        filesByInode_ = new NonBlockingHashMapLong<>();
+        closingFiles_ = new HashMap<>();
+        idleTimeoutInMillis_ = openFileConfig.getIdleTimeoutInMilliseconds();
+        maxOpenFiles_ = openFileConfig.getMaxOpenFiles();
+        readAheadConfig_ = _config.getReadAheadConfig();
+        readAheadBudget_ = new MemoryBudget(readAheadConfig_.getMemoryBudget());
+        parallelReadConfig_ = _config.getParallelReadConfig();
+        parallelReadPermits_ = new Semaphore(parallelReadConfig_.getMaxStreams());
+        writeBehindConfig_ = _config.getWriteBehindConfig();
+        writeBehindBudget_ = new MemoryBudget(writeBehindConfig_.getMemoryBudget());
+        writeSpoolConfig_ = _config.getWriteSpoolConfig();
+        writeSpoolSpace_ = new MemoryBudget(writeSpoolConfig_.getCapacity());
+        writeSpoolDirectory_ = initWriteSpoolDirectory(writeSpoolConfig_);
+        createdFiles_ = new NonBlockingHashMap<>();
+        bufferPool_ = _bufferPool;
+
+        scheduler_ = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "open-file-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long period = Math.max(1, idleTimeoutInMillis_ / 2);
+        scheduler_.scheduleAtFixedRate(this::closeIdleFiles, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Allows writes to the new data object to be spooled.
+    void markCreated(long _inodeNumber)
+    {
+        if (writeSpoolDirectory_ != null)
+        {
+            createdFiles_.put(_inodeNumber, System.currentTimeMillis());
+        }
+    }
+
+    int read(long _inodeNumber, IRODSAccount _acct, Path _path, byte[] _buffer, long _offset, int _count)
+        throws IOException
+    {
+        int bytesRead = readFromSpool(_inodeNumber, _buffer, _offset, _count);
+
+        if (bytesRead != WriteSpool.DELETED)
+        {
+            return bytesRead;
+        }
+
+        while (true)
+        {
+            OpenFile file = getOrOpen(_inodeNumber, _acct, _path);
+
+            try
+            {
+                flushOtherWriters(_inodeNumber, file);
+                return file.read(_buffer, _offset, _count);
+            }
+            catch (IRODSSessionThread.ClosedSessionException e)
+            {
+                log_.debug("read - Handle for [{}] was closed concurrently, retrying ...", _path);
+            }
+        }
+    }
+
+    // Returns true if the data was buffered rather than written to iRODS (see
+    // OpenFile.write()).
+    // @formatter:off
+    boolean write(long _inodeNumber, IRODSAccount _acct, Path _path, byte[] _buffer, long _offset, int _count,
+                  boolean _stable)
+        throws IOException
+    // @formatter:on
+    {
+        while (true)
+        {
+            OpenFile file = getOrOpen(_inodeNumber, _acct, _path);
+
+            try
+            {
+                if (_offset == 0 && createdFiles_.remove(_inodeNumber) != null)
+                {
+                    startSpool(file);
+                }
+
+                boolean buffered = file.write(_buffer, 0, _offset, _count, _stable);
+                invalidateReadAhead(_inodeNumber, file);
+                return buffered;
+            }
+            catch (IRODSSessionThread.ClosedSessionException e)
+            {
+                log_.debug("write - Handle for [{}] was closed concurrently, retrying ...", _path);
+            }
+        }
+    }
+
+    // Makes all buffered writes to the inode stable. Throws the first error
+    // reported by any of its handles, including handles closed since the
+    // previous commit.
+    void commit(long _inodeNumber) throws IOException
+    {
+        IOException error = null;
+
+        for (OpenFile file : getFiles(_inodeNumber))
+        {
+            try
+            {
+                file.commit();
+            }
+            catch (IRODSSessionThread.ClosedSessionException e)
+            {
+                // The handle is being closed. Its close is awaited below.
+            }
+            catch (IOException e)
+            {
+                error = (error == null) ? e : error;
+            }
+        }
+
+        List<CompletableFuture<Void>> closing;
+
+        synchronized (closingFiles_)
+        {
+            closing = closingFiles_.remove(_inodeNumber);
+        }
+
+        if (closing != null)
+        {
+            for (Future<Void> f : closing)
+            {
+                try
+                {
+                    IRODSSessionThread.await(f);
+                }
+                catch (IOException e)
+                {
+                    error = (error == null) ? e : error;
+                }
+            }
+        }
+
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+
+    // Returns the largest size implied by writes through any open handle for
+    // the inode, or -1 if no handle has been written to.
+    long getWrittenSize(long _inodeNumber)
+    {
+        long size = -1;
+
+        for (OpenFile file : getFiles(_inodeNumber))
+        {
+            size = Math.max(size, file.getWrittenSize());
+        }
+
+        return size;
+    }
+
+    private void startSpool(OpenFile _file)
+    {
+        try
+        {
+            WriteSpool spool = WriteSpool.create(writeSpoolDirectory_, _file.getInodeNumber(), writeSpoolSpace_,
+                                                 writeSpoolConfig_.getRegionSize(),
+                                                 writeSpoolConfig_.getTransferThreads());
+
+            if (!_file.startSpool(spool))
+            {
+                spool.delete();
+            }
+        }
+        catch (IOException e)
+        {
+            log_.error("startSpool - Writing [{}] directly: {}", _file.getPath(), e.getMessage());
+        }
+    }
+
+    // Returns WriteSpool.DELETED if no handle for the inode is spooling.
+    private int readFromSpool(long _inodeNumber, byte[] _buffer, long _offset, int _count)
+    {
+        for (OpenFile file : getFiles(_inodeNumber))
+        {
+            if (file.isSpooling())
+            {
+                int bytesRead = file.readFromSpool(_buffer, _offset, _count);
+
+                if (bytesRead != WriteSpool.DELETED)
+                {
+                    return bytesRead;
+                }
+            }
+        }
+
+        return WriteSpool.DELETED;
+    }
+
+    // Makes data buffered by other handles for the inode visible to a reader.
+    private void flushOtherWriters(long _inodeNumber, OpenFile _reader) throws IOException
+    {
+        for (OpenFile file : getFiles(_inodeNumber))
+        {
+            if (file != _reader)
+            {
+                try
+                {
+                    file.flush();
+                }
+                catch (IRODSSessionThread.ClosedSessionException e)
+                {
+                    // Buffered data is queued before a handle is closed.
+                }
+            }
+        }
+    }
+
+    // Drops data prefetched by other handles for the inode after a write.
+    private void invalidateReadAhead(long _inodeNumber, OpenFile _writer)
+    {
+        for (OpenFile file : getFiles(_inodeNumber))
+        {
+            if (file != _writer)
+            {
+                file.invalidateReadAhead();
+            }
+        }
+    }
+
+    // Closes every handle referring to the inode and waits for the data objects
+    // to be closed in iRODS. Must be called before the object is renamed or removed.
+    void close(long _inodeNumber)
+    {
+        List<OpenFile> closed = new ArrayList<>();
+
+        createdFiles_.remove(_inodeNumber);
+
+        for (OpenFile file : getFiles(_inodeNumber))
+        {
+            if (close(file))
+            {
+                closed.add(file);
+            }
+        }
+
+        closed.forEach(f -> f.awaitClose(CLOSE_TIMEOUT_IN_MILLIS));
+    }
+
+    // Closes every handle for a data object beneath the collection and waits for
+    // the data objects to be closed in iRODS. Handles refer to their data object
+    // by path, so this must be called before the collection is renamed or removed.
+    void closeDescendants(String _collectionPath)
+    {
+        final String prefix = _collectionPath.endsWith("/") ? _collectionPath : _collectionPath + "/";
+        List<OpenFile> closed = new ArrayList<>();
+
+        openFiles_.forEach((k, v) -> {
+            if (v.getPath().startsWith(prefix) && close(v))
+            {
+                createdFiles_.remove(v.getInodeNumber());
+                closed.add(v);
+            }
+        });
+
+        closed.forEach(f -> f.awaitClose(CLOSE_TIMEOUT_IN_MILLIS));
+    }
+
+    void closeAll()
+    {
+        log_.info("closeAll - Closing [{}] open files ...", openFiles_.size());
+
+        scheduler_.shutdownNow();
+
+        List<OpenFile> closed = new ArrayList<>();
+
+        openFiles_.forEach((k, v) -> {
+            if (close(v))
+            {
+                closed.add(v);
+            }
+        });
+
+        closed.forEach(f -> f.awaitClose(CLOSE_TIMEOUT_IN_MILLIS));
+    }
+
+    private OpenFile getOrOpen(long _inodeNumber, IRODSAccount _acct, Path _path) throws IOException
+    {
+        final String key = _inodeNumber + "#" + _acct.getUserName();
+        OpenFile file = openFiles_.get(key);
+
+        if (file != null && file.getPath().equals(_path.toString()))
+        {
+            return file;
+        }
+
+        IRODSSessionThread session = openSession(_inodeNumber, _acct);
+        OpenFile newFile = new OpenFile(factory_, connections_, session, _inodeNumber, _path.toString(),
+                                        readAheadConfig_, readAheadBudget_,
+                                        parallelReadConfig_, parallelReadPermits_,
+                                        writeBehindConfig_, writeBehindBudget_, bufferPool_);
+
+        index(newFile);
+
+        if (file != null)
+        {
+            // The inode has been remapped to a different path.
+            recordClose(file);
+
+            if (openFiles_.replace(key, file, newFile))
+            {
+                unindex(file);
+                file.close();
+                return newFile;
+            }
+        }
+        else if ((file = openFiles_.putIfAbsent(key, newFile)) == null)
+        {
+            if (openFiles_.size() > maxOpenFiles_)
+            {
+                closeLeastRecentlyUsedFile(newFile, null);
+            }
+
+            return newFile;
+        }
+
+        unindex(newFile);
+
+        // Another thread won the race. The session thread of the new handle
+        // has never been started, so closing it is cheap.
+        session.close();
+
+        return getOrOpen(_inodeNumber, _acct, _path);
+    }
+
+    private IRODSSessionThread openSession(long _inodeNumber, IRODSAccount _acct) throws IOException
+    {
+        String threadName = "open-file-" + _acct.getUserName() + "-" + _inodeNumber;
+        IRODSSessionThread session = connections_.tryOpenSession(_acct, threadName);
+
+        if (session != null)
+        {
+            return session;
+        }
+
+        // The session of a closed handle is given back once the data object has
+        // been closed in iRODS, which openSession() waits for. Handles of the same
+        // user are preferred, since the limit reached may be the one per user.
+        if (!closeLeastRecentlyUsedFile(null, _acct.getUserName()))
+        {
+            closeLeastRecentlyUsedFile(null, null);
+        }
+
+        return connections_.openSession(_acct, threadName);
+    }
+
+    // Closes the least recently used handle other than "_exclude" that belongs to
+    // "_userName", or to any user if "_userName" is null. Returns false if there
+    // is no such handle.
+    private boolean closeLeastRecentlyUsedFile(OpenFile _exclude, String _userName)
+    {
+        OpenFile lru = null;
+
+        for (OpenFile file : openFiles_.values())
+        {
+            if (file != _exclude &&
+                (_userName == null || _userName.equals(file.getAccount().getUserName())) &&
+                (lru == null || file.getLastAccessTime() < lru.getLastAccessTime()))
+            {
+                lru = file;
+            }
+        }
+
+        if (lru == null)
+        {
+            return false;
+        }
+
+        if (close(lru))
+        {
+            log_.debug("closeLeastRecentlyUsedFile - Closed [{}].", lru.getPath());
+        }
+
+        return true;
+    }
+
+    private void closeIdleFiles()
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+
+            openFiles_.forEach((k, v) -> {
+                if (now - v.getLastAccessTime() > idleTimeoutInMillis_)
+                {
+                    // Spooled data is uploaded while the handle is still
+                    // visible, so that readers keep being served from the spool.
+                    // A handle whose spool could not be uploaded stays open, so
+                    // that the upload is retried.
+                    if (v.isSpooling() && !commitQuietly(v))
+                    {
+                        return;
+                    }
+
+                    if (close(v))
+                    {
+                        log_.debug("closeIdleFiles - Closed idle file [{}].", v.getPath());
+                    }
+                }
+            });
+
+            createdFiles_.values().removeIf(t -> now - t > idleTimeoutInMillis_);
+
+            // Failed closes are kept until they have been reported by a COMMIT.
+            synchronized (closingFiles_)
+            {
+                closingFiles_.values().forEach(l -> l.removeIf(f -> f.isDone() && !f.isCompletedExceptionally()));
+                closingFiles_.values().removeIf(List::isEmpty);
+            }
+        }
+        catch (Exception e)
+        {
+            log_.error(e.getMessage());
+        }
+    }
+
+    private static String makeKey(OpenFile _file)
+    {
+        return _file.getInodeNumber() + "#" + _file.getAccount().getUserName();
+    }
+
+    // Removes "_file" from the table and closes it. Returns false if it has been
+    // removed or replaced already. The close is recorded before the handle
+    // disappears, so a concurrent commit() always finds one or the other.
+    private boolean close(OpenFile _file)
+    {
+        recordClose(_file);
+
+        if (!openFiles_.remove(makeKey(_file), _file))
+        {
+            return false;
+        }
+
+        unindex(_file);
+        _file.close();
+
+        return true;
+    }
+
+    private void recordClose(OpenFile _file)
+    {
+        synchronized (closingFiles_)
+        {
+            closingFiles_.computeIfAbsent(_file.getInodeNumber(), k -> new ArrayList<>()).add(_file.getCloseFuture());
+        }
+    }
+
+    private OpenFile[] getFiles(long _inodeNumber)
+    {
+        OpenFile[] files = filesByInode_.get(_inodeNumber);
+        return (files != null) ? files : NO_FILES;
+    }
+
+    private void index(OpenFile _file)
+    {
+        while (true)
+        {
+            long inodeNumber = _file.getInodeNumber();
+            OpenFile[] files = filesByInode_.get(inodeNumber);
+
+            if (files == null)
+            {
+                if (filesByInode_.putIfAbsent(inodeNumber, new OpenFile[] {_file}) == null)
+                {
+                    return;
+                }
+            }
+            else
+            {
+                OpenFile[] newFiles = Arrays.copyOf(files, files.length + 1);
+                newFiles[files.length] = _file;
+
+                if (filesByInode_.replace(inodeNumber, files, newFiles))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void unindex(OpenFile _file)
+    {
+        while (true)
+        {
+            long inodeNumber = _file.getInodeNumber();
+            OpenFile[] files = filesByInode_.get(inodeNumber);
+            int i = (files != null) ? Arrays.asList(files).indexOf(_file) : -1;
+
+            if (i < 0)
+            {
+                return;
+            }
+
+            if (files.length == 1)
+            {
+                if (filesByInode_.remove(inodeNumber, files))
+                {
+                    return;
+                }
+            }
+            else
+            {
+                OpenFile[] newFiles = new OpenFile[files.length - 1];
+                System.arraycopy(files, 0, newFiles, 0, i);
+                System.arraycopy(files, i + 1, newFiles, i, files.length - i - 1);
+
+                if (filesByInode_.replace(inodeNumber, files, newFiles))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean commitQuietly(OpenFile _file)
+    {
+        try
+        {
+            _file.commit();
+            return true;
+        }
+        catch (IOException e)
+        {
+            log_.error("commitQuietly - Failed to commit [{}]: {}", _file.getPath(), e.getMessage());
+            return false;
+        }
+    }
+
+    // Spooling is optional, so a spool directory that cannot be used only
+    // disables it.
+    private static Path initWriteSpoolDirectory(WriteSpoolConfig _config)
+    {
+        if (!_config.isEnabled())
+        {
+            return null;
+        }
+
+        try
+        {
+            Path directory = Paths.get(_config.getDirectory());
+            Files.createDirectories(directory);
+            WriteSpool.deleteStaleFiles(directory);
+            return directory;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log_.error("initWriteSpoolDirectory - Write spooling disabled: {}", e.getMessage());
+        }
+
+        return null;
+    }
+}
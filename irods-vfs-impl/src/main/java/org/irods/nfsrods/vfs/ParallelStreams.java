@@ -0,0 +1,211 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.packinstr.DataObjInp.OpenFlags;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.jargon.core.pub.io.FileIOOperations;
+import org.irods.jargon.core.pub.io.IRODSRandomAccessFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Additional read-only iRODS streams for one open data object. A single stream
+// is limited to the throughput of one TCP connection, so read-ahead spreads its
+// chunks over these streams to fetch adjacent ranges at the same time.
+//
+// Every stream holds one permit of a semaphore shared by all open files, which
+// bounds the number of extra connections the server makes to iRODS. Streams are
+// sessions of the connection pool, so they also count against its limits and
+// are only opened while the pool has room for them.
+class ParallelStreams
+{
+    private static final Logger log_ = LoggerFactory.getLogger(ParallelStreams.class);
+
+    private final Semaphore permits_;
+    private final Stream[] streams_;
+
+    private ParallelStreams(Semaphore _permits, Stream[] _streams)
+    {
+        permits_ = _permits;
+        streams_ = _streams;
+    }
+
+    // Opens up to "_count" streams, as permitted by "_permits". Returns null if
+    // no permit is available.
+    // @formatter:off
+    static ParallelStreams open(IRODSAccessObjectFactory _factory,
+                                IRODSConnectionPool _connections,
+                                IRODSAccount _acct,
+                                long _inodeNumber,
+                                String _path,
+                                int _count,
+                                Semaphore _permits)
+    // @formatter:on
+    {
+        int acquired = 0;
+
+        while (acquired < _count && _permits.tryAcquire())
+        {
+            ++acquired;
+        }
+
+        if (acquired == 0)
+        {
+            log_.debug("open - Server-wide stream limit reached, reading [{}] through a single stream.", _path);
+            return null;
+        }
+
+        List<Stream> streams = new ArrayList<>(acquired);
+
+        try
+        {
+            for (int i = 0; i < acquired; ++i)
+            {
+                String threadName = "parallel-read-" + _acct.getUserName() + "-" + _inodeNumber + "-" + i;
+                IRODSSessionThread session = _connections.tryOpenSession(_acct, threadName);
+
+                if (session == null)
+                {
+                    break;
+                }
+
+                streams.add(new Stream(_factory, session, _path));
+            }
+        }
+        catch (IOException e)
+        {
+            log_.debug("open - Could not open a stream for [{}]: {}", _path, e.getMessage());
+        }
+
+        _permits.release(acquired - streams.size());
+
+        if (streams.isEmpty())
+        {
+            log_.debug("open - Connection limit reached, reading [{}] through a single stream.", _path);
+            return null;
+        }
+
+        log_.debug("open - Opened [{}] additional streams for [{}].", streams.size(), _path);
+
+        return new ParallelStreams(_permits, streams.toArray(new Stream[streams.size()]));
+    }
+
+    int size()
+    {
+        return streams_.length;
+    }
+
+    // Reads until the buffer is full or the end of the data object is reached.
+    // The returned future yields the number of bytes read.
+    Future<Integer> readFullyAsync(int _stream, byte[] _buffer, long _offset, int _count) throws IOException
+    {
+        return streams_[_stream].readFullyAsync(_buffer, _offset, _count);
+    }
+
+    void close()
+    {
+        for (Stream s : streams_)
+        {
+            s.close();
+        }
+
+        permits_.release(streams_.length);
+    }
+
+    private static final class Stream
+    {
+        private final IRODSAccessObjectFactory factory_;
+        private final IRODSSessionThread session_;
+        private final String path_;
+
+        // These members must only be accessed from the session thread.
+        private IRODSRandomAccessFile file_;
+        private long position_;
+
+        Stream(IRODSAccessObjectFactory _factory, IRODSSessionThread _session, String _path)
+        {
+            factory_ = _factory;
+            session_ = _session;
+            path_ = _path;
+        }
+
+        Future<Integer> readFullyAsync(byte[] _buffer, long _offset, int _count) throws IOException
+        {
+            return session_.submit(() -> {
+                try
+                {
+                    if (file_ == null)
+                    {
+                        IRODSAccount acct = session_.getAccount();
+                        file_ = factory_.getIRODSFileFactory(acct).instanceIRODSRandomAccessFile(path_, OpenFlags.READ);
+                        position_ = 0;
+                    }
+
+                    if (position_ != _offset)
+                    {
+                        file_.seek(_offset, FileIOOperations.SeekWhenceType.SEEK_START);
+                        position_ = _offset;
+                    }
+
+                    int total = 0;
+
+                    while (total < _count)
+                    {
+                        int bytesRead = file_.read(_buffer, total, _count - total);
+
+                        if (bytesRead <= 0)
+                        {
+                            break;
+                        }
+
+                        position_ += bytesRead;
+                        total += bytesRead;
+                    }
+
+                    return total;
+                }
+                catch (IOException | JargonException e)
+                {
+                    position_ = -1;
+                    throw e;
+                }
+            });
+        }
+
+        void close()
+        {
+            try
+            {
+                session_.submit(() -> {
+                    if (file_ != null)
+                    {
+                        try
+                        {
+                            file_.close();
+                        }
+                        catch (IOException e)
+                        {
+                            log_.error(e.getMessage());
+                        }
+
+                        file_ = null;
+                    }
+
+                    return null;
+                });
+            }
+            catch (IOException e)
+            {
+                // The session has already been closed.
+            }
+
+            session_.close();
+        }
+    }
+}
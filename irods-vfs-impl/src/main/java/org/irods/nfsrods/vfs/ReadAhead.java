@@ -0,0 +1,361 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.irods.nfsrods.config.ReadAheadConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Detects sequential reads of an open data object and fetches the bytes that
+// follow asynchronously, so that later READ requests can be served from memory.
+//
+// The window (number of bytes fetched ahead of the reader) starts at the
+// configured initial size and doubles every time a read is fully served from
+// prefetched data. Random access collapses it back to the initial size and
+// drops everything that has been prefetched. NFS clients issue several READs
+// in parallel, so reads landing within the current window are still treated
+// as sequential even if they arrive out of order.
+//
+// Chunk buffers come from the buffer pool. A chunk is only returned to the
+// pool once it has been dropped, no reader is copying from it and its fetch
+// has completed.
+class ReadAhead
+{
+    private static final Logger log_ = LoggerFactory.getLogger(ReadAhead.class);
+
+    // The number of sequential reads required before data is prefetched.
+    private static final int SEQUENTIAL_READS_BEFORE_PREFETCH = 2;
+
+    private final OpenFile file_;
+    private final MemoryBudget budget_;
+    private final BufferPool bufferPool_;
+    private final int chunkSize_;
+    private final int initialWindowSize_;
+    private final int maxWindowSize_;
+
+    // These members are guarded by "this".
+    private final LinkedList<Chunk> chunks_;
+    private long nextOffset_;
+    private long prefetchEnd_;
+    private long eofOffset_;
+    private int windowSize_;
+    private int sequentialReads_;
+
+    ReadAhead(OpenFile _file, ReadAheadConfig _config, MemoryBudget _budget, BufferPool _bufferPool)
+    {
+        file_ = _file;
+        budget_ = _budget;
+        bufferPool_ = _bufferPool;
+        chunkSize_ = _config.getInitialWindowSize();
+        initialWindowSize_ = _config.getInitialWindowSize();
+        maxWindowSize_ = _config.getMaxWindowSize();
+        chunks_ = new LinkedList<>();
+        eofOffset_ = Long.MAX_VALUE;
+        windowSize_ = initialWindowSize_;
+    }
+
+    int read(byte[] _buffer, long _offset, int _count) throws IOException
+    {
+        List<Chunk> hits = new ArrayList<>();
+
+        synchronized (this)
+        {
+            boolean sequential = _offset >= nextOffset_ - windowSize_ && _offset <= Math.max(nextOffset_, prefetchEnd_);
+
+            if (sequential)
+            {
+                ++sequentialReads_;
+            }
+            else
+            {
+                log_.debug("read - Random access detected for [{}] at offset [{}].", file_.getPath(), _offset);
+                reset();
+            }
+
+            long end = _offset + _count;
+
+            for (Chunk c : chunks_)
+            {
+                if (c.offset_ < end && c.offset_ + c.capacity_ > _offset)
+                {
+                    ++c.readers_;
+                    hits.add(c);
+                }
+            }
+        }
+
+        int bytesCopied;
+
+        try
+        {
+            bytesCopied = copyFromChunks(hits, _buffer, _offset, _count);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                for (Chunk c : hits)
+                {
+                    --c.readers_;
+                    recycleIfUnused(c);
+                }
+            }
+        }
+
+        boolean hit = bytesCopied == _count;
+        int bytesRead = bytesCopied;
+
+        // The end of the data object seen by earlier fetches is not trusted here,
+        // since the data object may have grown through another handle or server.
+        if (!hit)
+        {
+            int n = file_.readDirect(_buffer, bytesCopied, _offset + bytesCopied, _count - bytesCopied);
+
+            if (n > 0)
+            {
+                bytesRead += n;
+                clearEofOffset(_offset + bytesRead);
+            }
+            else if (bytesCopied == 0)
+            {
+                bytesRead = n;
+            }
+        }
+
+        synchronized (this)
+        {
+            nextOffset_ = Math.max(nextOffset_, _offset + Math.max(bytesRead, 0));
+
+            if (hit)
+            {
+                windowSize_ = Math.min(windowSize_ * 2, maxWindowSize_);
+            }
+
+            releaseConsumedChunks();
+
+            if (sequentialReads_ >= SEQUENTIAL_READS_BEFORE_PREFETCH)
+            {
+                prefetch(_offset + Math.max(bytesRead, 0));
+            }
+        }
+
+        return bytesRead;
+    }
+
+    // Drops all prefetched data. Must be called whenever the data object is
+    // written to, through this handle or any other.
+    synchronized void invalidate()
+    {
+        reset();
+        nextOffset_ = 0;
+    }
+
+    private int copyFromChunks(List<Chunk> _hits, byte[] _buffer, long _offset, int _count) throws IOException
+    {
+        int copied = 0;
+
+        for (Chunk c : _hits)
+        {
+            long position = _offset + copied;
+
+            if (c.offset_ > position)
+            {
+                break;
+            }
+
+            int length = awaitChunk(c);
+
+            if (length < 0)
+            {
+                break;
+            }
+
+            if (length < c.capacity_)
+            {
+                setEofOffset(c.offset_ + length);
+            }
+
+            int chunkOffset = (int) (position - c.offset_);
+            int n = Math.min(_count - copied, length - chunkOffset);
+
+            if (n <= 0)
+            {
+                break;
+            }
+
+            System.arraycopy(c.data_, chunkOffset, _buffer, copied, n);
+            copied += n;
+
+            synchronized (this)
+            {
+                c.consumed_ += n;
+            }
+
+            if (copied == _count || length < c.capacity_)
+            {
+                break;
+            }
+        }
+
+        return copied;
+    }
+
+    // Returns the number of bytes held by the chunk, or -1 if the chunk could not be fetched.
+    private static int awaitChunk(Chunk _chunk)
+    {
+        try
+        {
+            return Math.max(0, IRODSSessionThread.await(_chunk.future_));
+        }
+        catch (Exception e)
+        {
+            log_.debug("awaitChunk - Prefetch failed, falling back to a direct read: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private synchronized void setEofOffset(long _offset)
+    {
+        eofOffset_ = Math.min(eofOffset_, _offset);
+    }
+
+    // Forgets the end of the data object once data has been read beyond it, so
+    // that the data object is prefetched again up to its new end.
+    private synchronized void clearEofOffset(long _readEnd)
+    {
+        if (_readEnd > eofOffset_)
+        {
+            log_.debug("clearEofOffset - [{}] has grown beyond offset [{}].", file_.getPath(), eofOffset_);
+            // Chunks reaching the old end are short and would set it again.
+            for (Iterator<Chunk> it = chunks_.iterator(); it.hasNext();)
+            {
+                Chunk c = it.next();
+
+                if (c.offset_ + c.capacity_ > eofOffset_)
+                {
+                    it.remove();
+                    release(c);
+                }
+            }
+
+            prefetchEnd_ = Math.min(prefetchEnd_, eofOffset_);
+            eofOffset_ = Long.MAX_VALUE;
+        }
+    }
+
+    private void prefetch(long _readEnd)
+    {
+        long target = Math.min(_readEnd + windowSize_, eofOffset_);
+        long offset = Math.max(prefetchEnd_, _readEnd);
+
+        while (offset < target)
+        {
+            if (!budget_.tryReserve(chunkSize_))
+            {
+                log_.debug("prefetch - Read-ahead memory budget exhausted.");
+                break;
+            }
+
+            Chunk c = new Chunk(offset, chunkSize_, bufferPool_.acquire(chunkSize_));
+
+            try
+            {
+                c.future_ = file_.readFullyAsync(c.data_, offset, chunkSize_);
+            }
+            catch (IOException e)
+            {
+                bufferPool_.release(c.data_);
+                budget_.release(chunkSize_);
+                break;
+            }
+
+            chunks_.add(c);
+            offset += chunkSize_;
+        }
+
+        prefetchEnd_ = Math.max(prefetchEnd_, offset);
+    }
+
+    private void releaseConsumedChunks()
+    {
+        for (Iterator<Chunk> it = chunks_.iterator(); it.hasNext();)
+        {
+            Chunk c = it.next();
+            boolean consumed = c.future_.isDone() && c.consumed_ >= c.capacity_;
+            boolean behind = c.offset_ + c.capacity_ <= nextOffset_ - maxWindowSize_;
+            boolean pastEof = c.offset_ >= eofOffset_;
+
+            if (consumed || behind || pastEof)
+            {
+                it.remove();
+                release(c);
+            }
+        }
+    }
+
+    private void reset()
+    {
+        chunks_.forEach(this::release);
+        chunks_.clear();
+        prefetchEnd_ = 0;
+        eofOffset_ = Long.MAX_VALUE;
+        windowSize_ = initialWindowSize_;
+        sequentialReads_ = 0;
+    }
+
+    // Must be called while holding the lock on "this".
+    private void release(Chunk _chunk)
+    {
+        // A fetch that is already running cannot be stopped, so its buffer
+        // must not be reused.
+        _chunk.fetched_ = _chunk.future_.isDone();
+        _chunk.future_.cancel(false);
+        _chunk.released_ = true;
+        budget_.release(_chunk.capacity_);
+        recycleIfUnused(_chunk);
+    }
+
+    // Must be called while holding the lock on "this".
+    private void recycleIfUnused(Chunk _chunk)
+    {
+        if (!_chunk.released_ || _chunk.readers_ > 0)
+        {
+            return;
+        }
+
+        if (_chunk.fetched_)
+        {
+            bufferPool_.release(_chunk.data_);
+        }
+        else
+        {
+            bufferPool_.discard(_chunk.data_);
+        }
+    }
+
+    private static final class Chunk
+    {
+        final long offset_;
+        final int capacity_;
+        final byte[] data_;
+        Future<Integer> future_;
+        int consumed_;
+
+        // These members are guarded by the enclosing ReadAhead.
+        int readers_;
+        boolean released_;
+        boolean fetched_;
+
+        Chunk(long _offset, int _capacity, byte[] _data)
+        {
+            offset_ = _offset;
+            capacity_ = _capacity;
+            data_ = _data;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.irods.nfsrods.vfs;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 import javax.cache.CacheManager;
 import javax.cache.Caching;
@@ -11,7 +12,6 @@ import org.apache.logging.log4j.core.config.Configurator;
 import org.dcache.nfs.ExportFile;
 import org.dcache.nfs.v4.MDSOperationFactory;
 import org.dcache.nfs.v4.NFSServerV41;
-import org.dcache.nfs.vfs.VirtualFileSystem;
 import org.dcache.oncrpc4j.rpc.OncRpcProgram;
 import org.dcache.oncrpc4j.rpc.OncRpcSvc;
 import org.dcache.oncrpc4j.rpc.OncRpcSvcBuilder;
@@ -23,7 +23,9 @@ import org.irods.jargon.core.exception.JargonException;
 import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
 import org.irods.jargon.core.pub.IRODSFileSystem;
 import org.irods.nfsrods.config.NFSServerConfig;
+import org.irods.nfsrods.config.RpcConfig;
 import org.irods.nfsrods.config.ServerConfig;
+import org.irods.nfsrods.utils.JMXUtils;
 import org.irods.nfsrods.utils.JSONUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,20 +77,39 @@ public class ServerMain
             IRODSAccessObjectFactory ifactory = ifsys.getIRODSAccessObjectFactory();
             IRODSIdMapper idMapper = new IRODSIdMapper(config, ifactory);
 
+            // Requests block on iRODS while they are processed. They are handed off
+            // to a pool that grows with the load so that the selector threads only
+            // ever read and write the network.
+            RpcConfig rpcConfig = nfsSvrConfig.getRpcConfig();
+            ElasticExecutor rpcExecutor = new ElasticExecutor(rpcConfig);
+            JMXUtils.registerMXBean(rpcExecutor, "RpcExecutor");
+
             // @formatter:off
-            nfsSvc = new OncRpcSvcBuilder()
+            OncRpcSvcBuilder nfsSvcBuilder = new OncRpcSvcBuilder()
                 .withPort(nfsSvrConfig.getPort())
                 .withTCP()
                 .withAutoPublish()
                 .withWorkerThreadIoStrategy()
-                .withSubjectPropagation()
-                .build();
+                .withWorkerThreadExecutionService(rpcExecutor)
+                .withSubjectPropagation();
+            // @formatter:on
+
+            if (rpcConfig.getSelectorThreads() > 0)
+            {
+                nfsSvcBuilder.withSelectorThreadPoolSize(rpcConfig.getSelectorThreads());
+            }
 
+            nfsSvc = nfsSvcBuilder.build();
+
+            // @formatter:off
             Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHandler<>(nfsSvc, "Shutting down NFS services")));
+            Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHandler<>(rpcExecutor, "Stopping RPC worker threads")));
             // @formatter:on
 
             ExportFile exportFile = new ExportFile(new File(EXPORTS_CONFIG_PATH));
-            VirtualFileSystem vfs = new IRODSVirtualFileSystem(config, ifactory, idMapper, cacheManager);
+            IRODSVirtualFileSystem vfs = new IRODSVirtualFileSystem(config, ifactory, idMapper, cacheManager);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(new ShutdownHandler<>(vfs, "Closing open files")));
 
             // @formatter:off
             NFSServerV41 nfs4 = new NFSServerV41.Builder()
@@ -134,8 +155,10 @@ public class ServerMain
         try
         {
             // @formatter:off
-            if      (_obj instanceof OncRpcSvc)       { ((OncRpcSvc) _obj).stop(); }
-            else if (_obj instanceof IRODSFileSystem) { ((IRODSFileSystem) _obj).closeAndEatExceptions(); }
+            if      (_obj instanceof OncRpcSvc)              { ((OncRpcSvc) _obj).stop(); }
+            else if (_obj instanceof IRODSFileSystem)        { ((IRODSFileSystem) _obj).closeAndEatExceptions(); }
+            else if (_obj instanceof IRODSVirtualFileSystem) { ((IRODSVirtualFileSystem) _obj).close(); }
+            else if (_obj instanceof ExecutorService)        { ((ExecutorService) _obj).shutdown(); }
             // @formatter:on
         }
         catch (Exception e)
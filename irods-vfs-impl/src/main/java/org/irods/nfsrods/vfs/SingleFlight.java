@@ -0,0 +1,93 @@
+package org.irods.nfsrods.vfs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Coalesces identical concurrent requests. While a value is being loaded for a
+// key, other callers asking for the same key wait for that load and share its
+// result (or failure) instead of issuing their own. Nothing is kept once the
+// load has finished. Caching results is left to the caller.
+class SingleFlight<K, V> implements SingleFlightMXBean
+{
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight_ = new ConcurrentHashMap<>();
+    private final AtomicLong calls_ = new AtomicLong();
+    private final AtomicLong savedCalls_ = new AtomicLong();
+
+    @FunctionalInterface
+    interface Loader<V, E extends Exception>
+    {
+        V load() throws E;
+    }
+
+    <E extends Exception> V call(K _key, Loader<V, E> _loader) throws E
+    {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = inFlight_.putIfAbsent(_key, future);
+
+        if (inFlight != null)
+        {
+            savedCalls_.incrementAndGet();
+            return await(inFlight);
+        }
+
+        calls_.incrementAndGet();
+
+        try
+        {
+            V value = _loader.load();
+            future.complete(value);
+            return value;
+        }
+        catch (Exception | Error e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            inFlight_.remove(_key, future);
+        }
+    }
+
+    @Override
+    public long getCallCount()
+    {
+        return calls_.get();
+    }
+
+    @Override
+    public long getSavedCallCount()
+    {
+        return savedCalls_.get();
+    }
+
+    // The failure of the load is rethrown as is. It was thrown by a loader of
+    // the same call site, so it has the type declared by the caller.
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V await(CompletableFuture<V> _future) throws E
+    {
+        try
+        {
+            return _future.join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+
+            throw (E) cause;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.irods.nfsrods.vfs;
+
+public interface SingleFlightMXBean
+{
+    long getCallCount();
+
+    long getSavedCallCount();
+}
@@ -0,0 +1,216 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Buffers UNSTABLE writes to an open data object so that they can be
+// acknowledged before they reach iRODS. Adjacent and overlapping writes are
+// coalesced into a single buffer, which is written to iRODS asynchronously
+// once it is full or a write does not fit into it. Buffered data is written
+// in order on the session thread of the data object, so a later synchronous
+// write can never be overtaken by older buffered data.
+//
+// Errors of asynchronous writes are reported by the next call to commit(),
+// i.e. when the client sends a COMMIT, or once the data object has been closed
+// (see OpenFile.getCloseFuture()).
+class WriteBehind
+{
+    private static final Logger log_ = LoggerFactory.getLogger(WriteBehind.class);
+
+    private final OpenFile file_;
+    private final MemoryBudget budget_;
+    private final BufferPool bufferPool_;
+    private final int bufferSize_;
+
+    // These members are guarded by "this".
+    private final List<Future<Void>> pendingWrites_;
+    private byte[] buffer_;
+    private long start_;
+    private int length_;
+    private IOException error_;
+
+    WriteBehind(OpenFile _file, int _bufferSize, MemoryBudget _budget, BufferPool _bufferPool)
+    {
+        file_ = _file;
+        budget_ = _budget;
+        bufferPool_ = _bufferPool;
+        bufferSize_ = _bufferSize;
+        pendingWrites_ = new ArrayList<>();
+    }
+
+    // Returns false if the data could not be buffered, in which case the caller
+    // must write it directly. Anything buffered before has been queued by then.
+    synchronized boolean write(byte[] _buffer, int _bufferOffset, long _offset, int _count) throws IOException
+    {
+        boolean fits = _offset >= start_ && _offset <= start_ + length_ && _offset + _count <= start_ + bufferSize_;
+
+        if (buffer_ != null && !fits)
+        {
+            writeBufferAsync();
+        }
+
+        if (_count > bufferSize_)
+        {
+            return false;
+        }
+
+        if (buffer_ == null)
+        {
+            if (!budget_.tryReserve(bufferSize_))
+            {
+                log_.debug("write - Write-behind memory budget exhausted, writing [{}] directly.", file_.getPath());
+                return false;
+            }
+
+            buffer_ = bufferPool_.acquire(bufferSize_);
+            start_ = _offset;
+            length_ = 0;
+        }
+
+        int bufferOffset = (int) (_offset - start_);
+        System.arraycopy(_buffer, _bufferOffset, buffer_, bufferOffset, _count);
+        length_ = Math.max(length_, bufferOffset + _count);
+
+        if (length_ == bufferSize_)
+        {
+            writeBufferAsync();
+        }
+
+        return true;
+    }
+
+    // Writes all buffered data to iRODS and waits for it. Errors are kept for
+    // the next call to commit().
+    synchronized void flush() throws IOException
+    {
+        writeBufferAsync();
+
+        for (Future<Void> f : pendingWrites_)
+        {
+            try
+            {
+                IRODSSessionThread.await(f);
+            }
+            catch (IOException e)
+            {
+                recordError(e);
+            }
+        }
+
+        pendingWrites_.clear();
+    }
+
+    // Same as flush(), but throws the first error encountered since the
+    // previous commit.
+    synchronized void commit() throws IOException
+    {
+        flush();
+
+        if (error_ != null)
+        {
+            IOException e = error_;
+            error_ = null;
+            throw e;
+        }
+    }
+
+    // Queues all buffered data without waiting for it. Used before the data
+    // object is closed. Returns the writes that are still pending, along with a
+    // failed future for an error not reported by commit() yet, so that they can
+    // be checked once the data object has been closed.
+    synchronized List<Future<Void>> close()
+    {
+        try
+        {
+            writeBufferAsync();
+        }
+        catch (IOException e)
+        {
+            log_.error("close - Lost buffered writes for [{}]: {}", file_.getPath(), e.getMessage());
+            recordError(e);
+        }
+
+        List<Future<Void>> pending = new ArrayList<>(pendingWrites_);
+        pendingWrites_.clear();
+
+        if (error_ != null)
+        {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(error_);
+            pending.add(failed);
+            error_ = null;
+        }
+
+        return pending;
+    }
+
+    // Must be called while holding the lock on "this".
+    private void writeBufferAsync() throws IOException
+    {
+        removeCompletedWrites();
+
+        if (buffer_ == null)
+        {
+            return;
+        }
+
+        byte[] buffer = buffer_;
+        buffer_ = null;
+
+        Runnable releaseBuffer = () -> {
+            bufferPool_.release(buffer);
+            budget_.release(bufferSize_);
+        };
+
+        try
+        {
+            pendingWrites_.add(file_.writeAsync(buffer, start_, length_, releaseBuffer));
+        }
+        catch (IOException e)
+        {
+            releaseBuffer.run();
+            throw e;
+        }
+    }
+
+    // Must be called while holding the lock on "this".
+    private void removeCompletedWrites()
+    {
+        for (Iterator<Future<Void>> it = pendingWrites_.iterator(); it.hasNext();)
+        {
+            Future<Void> f = it.next();
+
+            if (f.isDone())
+            {
+                it.remove();
+
+                try
+                {
+                    IRODSSessionThread.await(f);
+                }
+                catch (IOException e)
+                {
+                    recordError(e);
+                }
+            }
+        }
+    }
+
+    // Must be called while holding the lock on "this".
+    private void recordError(IOException _e)
+    {
+        log_.error("Asynchronous write to [{}] failed: {}", file_.getPath(), _e.getMessage());
+
+        if (error_ == null)
+        {
+            error_ = _e;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.irods.nfsrods.vfs;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.packinstr.TransferOptions;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.jargon.core.pub.io.IRODSFile;
+import org.irods.jargon.core.transfer.DefaultTransferControlBlock;
+import org.irods.jargon.core.transfer.TransferControlBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Stages the contents of a newly created data object in a local memory-mapped
+// file, so that writes only cost a memory copy. The staged file is uploaded
+// to iRODS in one parallel put once the client commits or closes it.
+//
+// The file is mapped in fixed-size regions as it grows. Every region reserves
+// its size against the space shared by all spool files, and writes that would
+// need more space than is left are rejected so that the caller can fall back
+// to writing to iRODS directly.
+class WriteSpool
+{
+    private static final Logger log_ = LoggerFactory.getLogger(WriteSpool.class);
+
+    private static final String FILE_PREFIX = "spool-";
+
+    // Returned by read() once the spool has been deleted.
+    static final int DELETED = -2;
+
+    private final Path file_;
+    private final RandomAccessFile raf_;
+    private final MemoryBudget space_;
+    private final int regionSize_;
+    private final int transferThreads_;
+
+    // These members are guarded by "this".
+    private final List<MappedByteBuffer> regions_;
+    private long length_;
+    private boolean deleted_;
+
+    private WriteSpool(Path _file, MemoryBudget _space, int _regionSize, int _transferThreads) throws IOException
+    {
+        file_ = _file;
+        raf_ = new RandomAccessFile(_file.toFile(), "rw");
+        space_ = _space;
+        regionSize_ = _regionSize;
+        transferThreads_ = _transferThreads;
+        regions_ = new ArrayList<>();
+    }
+
+    static WriteSpool create(Path _directory, long _inodeNumber, MemoryBudget _space, int _regionSize,
+                             int _transferThreads)
+        throws IOException
+    {
+        Path file = Files.createTempFile(_directory, FILE_PREFIX + _inodeNumber + "-", "");
+        return new WriteSpool(file, _space, _regionSize, _transferThreads);
+    }
+
+    // Spool files left behind by a previous run were never committed, so
+    // clients will resend their contents.
+    static void deleteStaleFiles(Path _directory) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, FILE_PREFIX + "*"))
+        {
+            for (Path f : files)
+            {
+                log_.info("deleteStaleFiles - Deleting stale spool file [{}] ...", f);
+                Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    // Returns false if the spool has run out of space.
+    synchronized boolean write(byte[] _buffer, int _bufferOffset, long _offset, int _count) throws IOException
+    {
+        if (deleted_ || !ensureCapacity(_offset + _count))
+        {
+            return false;
+        }
+
+        int copied = 0;
+
+        while (copied < _count)
+        {
+            ByteBuffer region = region(_offset + copied);
+            int n = Math.min(_count - copied, region.remaining());
+            region.put(_buffer, _bufferOffset + copied, n);
+            copied += n;
+        }
+
+        length_ = Math.max(length_, _offset + _count);
+
+        return true;
+    }
+
+    // Returns the number of bytes read, -1 at the end of the file, or DELETED.
+    synchronized int read(byte[] _buffer, long _offset, int _count)
+    {
+        if (deleted_)
+        {
+            return DELETED;
+        }
+
+        if (_offset >= length_)
+        {
+            return -1;
+        }
+
+        int count = (int) Math.min(_count, length_ - _offset);
+        int copied = 0;
+
+        while (copied < count)
+        {
+            ByteBuffer region = region(_offset + copied);
+            int n = Math.min(count - copied, region.remaining());
+            region.get(_buffer, copied, n);
+            copied += n;
+        }
+
+        return count;
+    }
+
+    synchronized long length()
+    {
+        return length_;
+    }
+
+    // Uploads the spool file to the data object. Must be called on a thread
+    // that may use the account's iRODS connection.
+    synchronized void upload(IRODSAccessObjectFactory _factory, IRODSAccount _acct, String _path)
+        throws IOException, JargonException
+    {
+        long mappedLength = raf_.length();
+
+        // The put transfers the whole local file.
+        raf_.setLength(length_);
+
+        try
+        {
+            log_.debug("upload - Uploading [{}] bytes to [{}] ...", length_, _path);
+
+            IRODSFile target = _factory.getIRODSFileFactory(_acct).instanceIRODSFile(_path);
+            TransferControlBlock tcb = DefaultTransferControlBlock.instance();
+            TransferOptions options = new TransferOptions();
+            options.setForceOption(TransferOptions.ForceOption.USE_FORCE);
+            options.setUseParallelTransfer(transferThreads_ > 1);
+            options.setMaxThreads(transferThreads_);
+            tcb.setTransferOptions(options);
+
+            _factory.getDataTransferOperations(_acct).putOperation(file_.toFile(), target, null, tcb);
+        }
+        finally
+        {
+            // Accessing mapped pages past the end of the file is fatal.
+            raf_.setLength(mappedLength);
+        }
+    }
+
+    synchronized void delete()
+    {
+        if (deleted_)
+        {
+            return;
+        }
+
+        deleted_ = true;
+        space_.release((long) regions_.size() * regionSize_);
+        regions_.clear();
+
+        try
+        {
+            raf_.close();
+            Files.deleteIfExists(file_);
+        }
+        catch (IOException e)
+        {
+            log_.error("delete - Failed to delete spool file [{}]: {}", file_, e.getMessage());
+        }
+    }
+
+    // Must be called while holding the lock on "this".
+    private boolean ensureCapacity(long _length) throws IOException
+    {
+        while ((long) regions_.size() * regionSize_ < _length)
+        {
+            if (!space_.tryReserve(regionSize_))
+            {
+                log_.debug("ensureCapacity - Spool space exhausted.");
+                return false;
+            }
+
+            long position = (long) regions_.size() * regionSize_;
+
+            try
+            {
+                regions_.add(raf_.getChannel().map(FileChannel.MapMode.READ_WRITE, position, regionSize_));
+            }
+            catch (IOException e)
+            {
+                space_.release(regionSize_);
+                throw e;
+            }
+        }
+
+        return true;
+    }
+
+    // Must be called while holding the lock on "this".
+    private ByteBuffer region(long _offset)
+    {
+        ByteBuffer bb = regions_.get((int) (_offset / regionSize_)).duplicate();
+        bb.position((int) (_offset % regionSize_));
+        return bb;
+    }
+}
@@ -0,0 +1,143 @@
+package org.irods.nfsrods.vfs;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures InodeToPathMapper.getOrAssign() with 1M and 10M mapped objects, for
+// objects that are mapped already (the common case of LOOKUP and READDIR) and
+// for new objects, which are mapped while older entries are evicted.
+//
+// Run with:
+//   mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+//   java -cp target/test-classes:target/classes:$(cat target/classpath.txt) \
+//       org.openjdk.jmh.Main InodeToPathMapperBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class InodeToPathMapperBenchmark
+{
+    static final Path ROOT = Paths.get("/tempZone/home/rods");
+    static final int OBJECTS_PER_COLLECTION = 1000;
+
+    // The number of mapped paths looked up repeatedly. Keeping all paths would
+    // take more memory than the mapper itself.
+    private static final int SAMPLE_SIZE = 1 << 16;
+
+    @Param({"1000000", "10000000"})
+    public int mappedObjects_;
+
+    private InodeToPathMapper mapper_;
+    private Path[] sample_;
+    private long[] sampleObjectIds_;
+
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        private static int threadCount_;
+
+        int next_;
+        long newObjects_;
+        Path newCollection_;
+
+        @Setup
+        public void setUp()
+        {
+            synchronized (Cursor.class)
+            {
+                newCollection_ = ROOT.resolve("new-" + threadCount_++);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        // Leaves room for the collections, so that evictions only start once new
+        // objects are mapped.
+        int maxEntries = mappedObjects_ + mappedObjects_ / OBJECTS_PER_COLLECTION + 64;
+
+        mapper_ = populate(new InodeToPathMapper(Paths.get("/tempZone"), maxEntries), mappedObjects_);
+        sample_ = new Path[SAMPLE_SIZE];
+        sampleObjectIds_ = new long[SAMPLE_SIZE];
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < SAMPLE_SIZE; ++i)
+        {
+            int object = random.nextInt(mappedObjects_);
+            sample_[i] = objectPath(object);
+            sampleObjectIds_[i] = objectId(object);
+        }
+    }
+
+    @Benchmark
+    public long getOrAssignMapped(Cursor _cursor)
+    {
+        int i = _cursor.next_++ & (SAMPLE_SIZE - 1);
+        return mapper_.getOrAssign(sample_[i], sampleObjectIds_[i]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long getOrAssignMappedConcurrently(Cursor _cursor)
+    {
+        return getOrAssignMapped(_cursor);
+    }
+
+    // Includes building the path of the new object.
+    @Benchmark
+    public long getOrAssignNew(Cursor _cursor)
+    {
+        long n = _cursor.newObjects_++;
+        Path path = _cursor.newCollection_.resolve("n" + n);
+        return mapper_.getOrAssign(path, Long.MAX_VALUE - n);
+    }
+
+    // Maps "_objects" objects spread over collections of OBJECTS_PER_COLLECTION
+    // objects each.
+    static InodeToPathMapper populate(InodeToPathMapper _mapper, int _objects)
+    {
+        Path collection = null;
+
+        for (int i = 0; i < _objects; ++i)
+        {
+            if (i % OBJECTS_PER_COLLECTION == 0)
+            {
+                collection = ROOT.resolve("c" + (i / OBJECTS_PER_COLLECTION));
+                _mapper.getOrAssign(collection, (1L << 40) + i / OBJECTS_PER_COLLECTION);
+            }
+
+            _mapper.getOrAssign(collection.resolve("o" + i), objectId(i));
+        }
+
+        return _mapper;
+    }
+
+    private static Path objectPath(int _object)
+    {
+        return ROOT.resolve("c" + (_object / OBJECTS_PER_COLLECTION)).resolve("o" + _object);
+    }
+
+    private static long objectId(int _object)
+    {
+        return _object + 1;
+    }
+}
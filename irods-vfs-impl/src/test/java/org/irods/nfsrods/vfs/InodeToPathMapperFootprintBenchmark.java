@@ -0,0 +1,69 @@
+package org.irods.nfsrods.vfs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures the heap retained by InodeToPathMapper per mapped object with 1M and
+// 10M mapped objects. The result is reported as the "bytesPerObject_" counter.
+// The time reported is the time it takes to map all objects.
+//
+// Run like InodeToPathMapperBenchmark.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms12g", "-Xmx12g", "-XX:+UseParallelGC"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class InodeToPathMapperFootprintBenchmark
+{
+    @Param({"1000000", "10000000"})
+    public int mappedObjects_;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint
+    {
+        public long bytesPerObject_;
+    }
+
+    @Benchmark
+    public InodeToPathMapper populate(Footprint _footprint)
+    {
+        int maxEntries = 2 * mappedObjects_;
+        long before = usedHeap();
+
+        InodeToPathMapper mapper = new InodeToPathMapper(Paths.get("/tempZone"), maxEntries);
+        InodeToPathMapperBenchmark.populate(mapper, mappedObjects_);
+
+        _footprint.bytesPerObject_ = (usedHeap() - before) / mappedObjects_;
+
+        return mapper;
+    }
+
+    private static long usedHeap()
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        // A single collection may leave garbage behind.
+        for (int i = 0; i < 3; ++i)
+        {
+            memory.gc();
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}